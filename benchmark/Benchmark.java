@@ -0,0 +1,327 @@
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal measurement harness: warmup iterations, measured iterations, and results as JSON.
+ * The JSON mirrors the shape JMH writes, so the same tooling can read runs, but the numbers aren't JMH numbers:
+ * the score error is the standard deviation of the iterations rather than JMH's 99.9% interval.
+ * Every result also gets the bytes allocated per operation, like JMH's gc.alloc.rate.norm with -prof gc.
+ * <p>
+ * <p>Like JMH, every group can be measured in forks, fresh JVMs whose results are merged, so one JVM's
+ * compilation decisions don't decide the result, and measured code hands its results to a {@link Blackhole}.</p>
+ */
+public class Benchmark {
+    private static final String RESULT_PREFIX = "benchmark-result\t";
+
+    public interface Operation {
+        /**
+         * @return the number of operations done, used for the throughput
+         */
+        long run(Blackhole blackhole) throws Exception;
+    }
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final List<Result> results = new ArrayList<>();
+    private final Blackhole blackhole = new Blackhole();
+
+    public Benchmark(int warmupIterations, int measurementIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    public Result run(String name, Map<String, String> params, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; ++i) {
+            blackhole.consume(operation.run(blackhole));
+        }
+        double[] scores = new double[measurementIterations];
+        long allocatedBefore = getAllocatedBytes();
+        long totalOperations = 0;
+        for (int i = 0; i < measurementIterations; ++i) {
+            long start = System.nanoTime();
+            long operations = operation.run(blackhole);
+            long duration = System.nanoTime() - start;
+            blackhole.consume(operations);
+            totalOperations += operations;
+            scores[i] = operations * 1e9 / Math.max(1, duration);
+        }
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        Result result = new Result(name, params, scores);
+        if (allocatedBefore >= 0) {
+            result.addSecondaryMetric("gc.alloc.rate.norm", (double) allocated / Math.max(1, totalOperations));
+        }
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Runs the arguments in forks JVMs of their own, one after the other, and merges their results into this one.
+     * The forks have to end with {@link #printForFork}.
+     */
+    public void fork(int forks, String mainClass, List<String> arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + "/bin/java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.addAll(arguments);
+        for (int fork = 0; fork < forks; ++fork) {
+            System.out.println("fork " + (fork + 1) + " of " + forks + ": " + arguments);
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(RESULT_PREFIX)) {
+                        merge(Result.parse(line.substring(RESULT_PREFIX.length())));
+                    } else {
+                        System.out.println(line);
+                    }
+                }
+            }
+            if (process.waitFor() != 0) {
+                throw new IOException("fork failed with exit code " + process.exitValue() + ": " + arguments);
+            }
+        }
+    }
+
+    private void merge(Result forked) {
+        for (Result result : results) {
+            if (result.name.equals(forked.name) && result.params.equals(forked.params)) {
+                result.addFork(forked);
+                return;
+            }
+        }
+        results.add(forked);
+    }
+
+    /**
+     * Hands the results of this fork to the JVM that started it.
+     */
+    public void printForFork() {
+        for (Result result : results) {
+            System.out.println(RESULT_PREFIX + result.toLine());
+        }
+        System.out.println("(" + blackhole + ")");
+    }
+
+    /**
+     * @return the bytes the current thread allocated so far, -1 when the JVM can't tell
+     */
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public void writeJson(String fileName) throws IOException {
+        try (Writer writer = new FileWriter(fileName)) {
+            writer.write("[\n");
+            for (int i = 0; i < results.size(); ++i) {
+                writer.write(results.get(i).toJson());
+                writer.write(i + 1 < results.size() ? ",\n" : "\n");
+            }
+            writer.write("]\n");
+        }
+        System.out.println("results written to " + fileName + " (" + blackhole + ")");
+    }
+
+    public static Map<String, String> params(String... keysAndValues) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            params.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return params;
+    }
+
+    /**
+     * Takes the results of measured code, so the JIT can't drop the work that made them. Like JMH's blackhole it
+     * compares them with volatile fields they never equal, which the JIT can't know.
+     */
+    public static final class Blackhole {
+        private volatile long first = 1;
+        private volatile long second = 2;
+        private volatile Object bait = new Object();
+        private Object object = null;
+        private long consumed = 0;
+
+        public void consume(long value) {
+            if (value == first & value == second) {
+                consumed += value;
+            }
+        }
+
+        public void consume(boolean value) {
+            consume(value ? 1 : 0);
+        }
+
+        public void consume(Object value) {
+            //never true, the bait is never handed out
+            if (value == bait) {
+                object = value;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "blackhole " + consumed + (object == null ? "" : " " + object.hashCode());
+        }
+    }
+
+    public static class Result {
+        private final String name;
+        private final Map<String, String> params;
+        //the scores of every fork
+        private final List<double[]> forks = new ArrayList<>();
+        private final Map<String, Double> secondaryMetrics = new LinkedHashMap<>();
+        private int mergedForks = 1;
+
+        private Result(String name, Map<String, String> params, double[] scores) {
+            this.name = name;
+            this.params = params;
+            this.forks.add(scores);
+        }
+
+        public double getScore() {
+            double sum = 0;
+            int count = 0;
+            for (double[] scores : forks) {
+                for (double score : scores) {
+                    sum += score;
+                    ++count;
+                }
+            }
+            return sum / count;
+        }
+
+        public double getScoreError() {
+            double mean = getScore();
+            double squares = 0;
+            int count = 0;
+            for (double[] scores : forks) {
+                for (double score : scores) {
+                    squares += (score - mean) * (score - mean);
+                    ++count;
+                }
+            }
+            return count < 2 ? Double.NaN : Math.sqrt(squares / (count - 1));
+        }
+
+        public void addSecondaryMetric(String metric, double value) {
+            secondaryMetrics.put(metric, value);
+        }
+
+        /**
+         * Takes in the scores of another fork, its secondary metrics are averaged in.
+         */
+        private void addFork(Result fork) {
+            forks.addAll(fork.forks);
+            for (Map.Entry<String, Double> metric : fork.secondaryMetrics.entrySet()) {
+                Double previous = secondaryMetrics.get(metric.getKey());
+                secondaryMetrics.put(metric.getKey(), previous == null ? metric.getValue()
+                        : (previous * mergedForks + metric.getValue()) / (mergedForks + 1));
+            }
+            ++mergedForks;
+        }
+
+        /**
+         * @return the result as a tab separated line: name, params, scores, secondary metrics
+         */
+        private String toLine() {
+            StringBuilder builder = new StringBuilder(name).append('\t');
+            appendPairs(builder, params);
+            builder.append('\t');
+            double[] scores = forks.get(0);
+            for (int i = 0; i < scores.length; ++i) {
+                builder.append(i == 0 ? "" : ",").append(scores[i]);
+            }
+            builder.append('\t');
+            appendPairs(builder, secondaryMetrics);
+            return builder.toString();
+        }
+
+        private static void appendPairs(StringBuilder builder, Map<String, ?> pairs) {
+            boolean first = true;
+            for (Map.Entry<String, ?> pair : pairs.entrySet()) {
+                builder.append(first ? "" : ",").append(pair.getKey()).append('=').append(pair.getValue());
+                first = false;
+            }
+        }
+
+        private static Result parse(String line) {
+            String[] fields = line.split("\t", -1);
+            Map<String, String> params = new LinkedHashMap<>();
+            for (String pair : fields[1].isEmpty() ? new String[0] : fields[1].split(",")) {
+                params.put(pair.substring(0, pair.indexOf('=')), pair.substring(pair.indexOf('=') + 1));
+            }
+            double[] scores = Arrays.stream(fields[2].split(",")).mapToDouble(Double::parseDouble).toArray();
+            Result result = new Result(fields[0], params, scores);
+            for (String pair : fields[3].isEmpty() ? new String[0] : fields[3].split(",")) {
+                result.addSecondaryMetric(pair.substring(0, pair.indexOf('=')),
+                        Double.parseDouble(pair.substring(pair.indexOf('=') + 1)));
+            }
+            return result;
+        }
+
+        private String toJson() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("  {\"benchmark\": \"").append(name).append("\", \"mode\": \"thrpt\", \"forks\": ")
+                    .append(forks.size()).append(", \"params\": {");
+            boolean first = true;
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                builder.append(first ? "" : ", ").append('"').append(param.getKey()).append("\": \"")
+                        .append(param.getValue()).append('"');
+                first = false;
+            }
+            builder.append("}, \"primaryMetric\": {\"score\": ").append(number(getScore()))
+                    .append(", \"scoreError\": ").append(number(getScoreError()))
+                    .append(", \"scoreUnit\": \"ops/s\", \"rawData\": [");
+            //a list of iterations per fork, as JMH writes it
+            for (int fork = 0; fork < forks.size(); ++fork) {
+                builder.append(fork == 0 ? "[" : ", [");
+                double[] scores = forks.get(fork);
+                for (int i = 0; i < scores.length; ++i) {
+                    builder.append(i == 0 ? "" : ", ").append(number(scores[i]));
+                }
+                builder.append(']');
+            }
+            builder.append("]}, \"secondaryMetrics\": {");
+            first = true;
+            for (Map.Entry<String, Double> metric : secondaryMetrics.entrySet()) {
+                builder.append(first ? "" : ", ").append('"').append(metric.getKey()).append("\": ")
+                        .append(number(metric.getValue()));
+                first = false;
+            }
+            return builder.append("}}").toString();
+        }
+
+        private static String number(double value) {
+            return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", value);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-40s %-50s %,18.1f ops/s +- %,.1f",
+                    name, params, getScore(), getScoreError());
+        }
+    }
+}
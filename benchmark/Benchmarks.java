@@ -0,0 +1,243 @@
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the benchmark groups given as arguments (all when none are given): generator, kernel, wheel, sqrt, storage
+ * and controller. Every group runs in --forks JVMs of its own (one by default, 0 runs them in this JVM).
+ * Results end up in benchmark-results.json unless --out says otherwise.
+ */
+public class Benchmarks {
+    private static final long[] MAGNITUDES = {1_000_000L, 1_000_000_000L, 1_000_000_000_000L};
+    private static final long[] RANGE_SIZES = {10_000L, 1_000_000L};
+    private static final String[] GROUPS = {"generator", "kernel", "wheel", "sqrt", "storage", "controller"};
+
+    public static void main(String[] args) throws Exception {
+        Set<String> groups = new HashSet<>();
+        String out = "benchmark-results.json";
+        boolean quick = false;
+        int forks = 1;
+        boolean forked = false;
+        for (int i = 0; i < args.length; ++i) {
+            if ("--out".equals(args[i]) && i + 1 < args.length) {
+                out = args[++i];
+            } else if ("--forks".equals(args[i]) && i + 1 < args.length) {
+                forks = Integer.parseInt(args[++i]);
+            } else if ("--forked".equals(args[i])) {
+                forked = true;
+            } else if ("--quick".equals(args[i])) {
+                quick = true;
+            } else {
+                groups.add(args[i]);
+            }
+        }
+        Benchmark benchmark = quick ? new Benchmark(1, 2) : new Benchmark(3, 5);
+        if (!forked && forks > 0) {
+            for (String group : GROUPS) {
+                if (groups.isEmpty() || groups.contains(group)) {
+                    benchmark.fork(forks, Benchmarks.class.getName(),
+                            quick ? Arrays.asList(group, "--quick", "--forked") : Arrays.asList(group, "--forked"));
+                }
+            }
+            benchmark.writeJson(out);
+            return;
+        }
+        if (groups.isEmpty() || groups.contains("generator")) {
+            generator(benchmark);
+        }
+        if (groups.isEmpty() || groups.contains("kernel")) {
+            kernel(benchmark);
+        }
+        if (groups.isEmpty() || groups.contains("wheel")) {
+            wheel(benchmark);
+        }
+        if (groups.isEmpty() || groups.contains("sqrt")) {
+            sqrt(benchmark);
+        }
+        if (groups.isEmpty() || groups.contains("storage")) {
+            storage(benchmark, quick ? new long[]{1_000_000L} : new long[]{1_000_000L, 10_000_000L});
+        }
+        if (groups.isEmpty() || groups.contains("controller")) {
+            controller(benchmark, quick ? 1000 : 3000);
+        }
+        if (forked) {
+            benchmark.printForFork();
+        } else {
+            benchmark.writeJson(out);
+        }
+    }
+
+    private static void generator(Benchmark benchmark) throws Exception {
+        final long[] sievingPrimes = SegmentedSieveGenerator.oddPrimesUpTo(2_000_000L);
+        final PrimeList divisors = new PrimeList();
+        divisors.addAll(sievingPrimes, sievingPrimes.length);
+        for (final long magnitude : MAGNITUDES) {
+            for (final long size : RANGE_SIZES) {
+                benchmark.run("generator.sieve", Benchmark.params("magnitude", Long.toString(magnitude),
+                        "rangeSize", Long.toString(size)), blackhole -> {
+                    SegmentedSieveGenerator generator = new SegmentedSieveGenerator(magnitude, magnitude + size,
+                            sievingPrimes);
+                    generator.generate();
+                    blackhole.consume(generator.getBatch());
+                    return size;
+                });
+                //testing every candidate on its own is too slow for the widest ranges
+                final long testedSize = Math.min(size, 100_000L);
+                benchmark.run("generator.millerRabin", Benchmark.params("magnitude", Long.toString(magnitude),
+                        "rangeSize", Long.toString(testedSize)), blackhole -> {
+                    PrimeGenerator generator = new PrimeGenerator(BigDecimal.valueOf(magnitude),
+                            BigDecimal.valueOf(magnitude + testedSize), MillerRabinTest.INSTANCE);
+                    generator.generate();
+                    blackhole.consume(generator.getBatch());
+                    return testedSize;
+                });
+            }
+            //trial division is far too slow for the wide and high ranges
+            final long trialSize = magnitude >= 1_000_000_000_000L ? 100 : 10_000;
+            benchmark.run("generator.trialDivision", Benchmark.params("magnitude", Long.toString(magnitude),
+                    "rangeSize", Long.toString(trialSize)), blackhole -> {
+                PrimeGenerator generator = new PrimeGenerator(BigDecimal.valueOf(magnitude),
+                        BigDecimal.valueOf(magnitude + trialSize), divisors);
+                generator.generate();
+                blackhole.consume(generator.getBatch());
+                return trialSize;
+            });
+        }
+    }
+
+    private static void kernel(Benchmark benchmark) throws Exception {
+        final long[] sievingPrimes = SegmentedSieveGenerator.oddPrimesUpTo(2_000_000L);
+        final long size = 10_000_000L;
+        for (final SieveKernel kernel : new SieveKernel[]{ScalarSieveKernel.INSTANCE, PatternSieveKernel.INSTANCE}) {
+            for (final long magnitude : MAGNITUDES) {
+                final AtomicReference<Long> found = new AtomicReference<>();
+                Benchmark.Result result = benchmark.run("generator.sieveKernel", Benchmark.params("kernel",
+                        kernel.getName(), "magnitude", Long.toString(magnitude), "rangeSize", Long.toString(size)),
+                        blackhole -> {
+                    SegmentedSieveGenerator generator = new SegmentedSieveGenerator(magnitude, magnitude + size,
+                            sievingPrimes, kernel);
+                    generator.generate();
+                    found.set(generator.getBatch().size());
+                    return size;
+                });
+                result.addSecondaryMetric("primes", found.get());
+            }
+        }
+    }
+
+    private static void wheel(Benchmark benchmark) throws Exception {
+        final long[] sievingPrimes = SegmentedSieveGenerator.oddPrimesUpTo(2_000_000L);
+        final PrimeList divisors = new PrimeList();
+        divisors.addAll(sievingPrimes, sievingPrimes.length);
+        final long magnitude = 1_000_000_000L;
+        final long size = 10_000L;
+        for (final Wheel wheel : Wheel.values()) {
+            final AtomicReference<Long> tested = new AtomicReference<>();
+            Benchmark.Result result = benchmark.run("generator.wheel", Benchmark.params("wheel", wheel.name(),
+                    "magnitude", Long.toString(magnitude), "rangeSize", Long.toString(size)), blackhole -> {
+                PrimeGenerator generator = new PrimeGenerator(BigDecimal.valueOf(magnitude),
+                        BigDecimal.valueOf(magnitude + size), divisors, wheel);
+                generator.generate();
+                tested.set(generator.getCandidatesTested());
+                return size;
+            });
+            result.addSecondaryMetric("skippedCandidateRatio", 1 - 2.0 * tested.get() / size);
+            result.addSecondaryMetric("expectedSkippedRatio", wheel.getSkippedRatio());
+        }
+    }
+
+    private static void sqrt(Benchmark benchmark) throws Exception {
+        final int calls = 10_000;
+        for (final long magnitude : new long[]{1_000_001L, 1_000_000_000_001L, 1_000_000_000_000_000_001L}) {
+            benchmark.run("bigDecimalMath.sqrt", Benchmark.params("magnitude", Long.toString(magnitude)),
+                    blackhole -> {
+                for (int i = 0; i < calls; ++i) {
+                    blackhole.consume(BigDecimalMath.sqrt(BigDecimal.valueOf(magnitude + 2L * i),
+                            MathContext.UNLIMITED));
+                }
+                return calls;
+            });
+            benchmark.run("bigDecimalMath.integerSqrt", Benchmark.params("magnitude", Long.toString(magnitude)),
+                    blackhole -> {
+                for (int i = 0; i < calls; ++i) {
+                    blackhole.consume(BigDecimalMath.integerSqrt(BigDecimal.valueOf(magnitude + 2L * i)));
+                }
+                return calls;
+            });
+        }
+    }
+
+    private static void storage(Benchmark benchmark, long[] counts) throws Exception {
+        String previousDirectory = PrimeStorage.getDirectory();
+        File directory = Files.createTempDirectory("prime-benchmark").toFile();
+        PrimeStorage.setDirectory(directory.getPath());
+        try {
+            for (long count : counts) {
+                final PrimeList primes = firstOddPrimes(count);
+                final PrimeResult result = new PrimeResult(BigDecimal.valueOf(primes.last()), primes);
+                benchmark.run("storage.roundTrip", Benchmark.params("primes", Long.toString(count)), blackhole -> {
+                    PrimeStorage.save(result);
+                    //loaded the way PrimeStorage.get() loads it, closed again so no mapping outlives its iteration
+                    File file = PrimeStorage.getBinaryFile(result.getMaxGenerated().longValueExact());
+                    try (PrimeSegmentStore loaded = new PrimeSegmentStore(PrimeFile.open(file),
+                            PrimeStorage.getSegmentSpan(), PrimeStorage.getSegmentCacheBytes())) {
+                        PrimitiveIterator.OfLong iterator = loaded.iterator(0, Long.MAX_VALUE);
+                        while (iterator.hasNext()) {
+                            blackhole.consume(iterator.nextLong());
+                        }
+                        return loaded.size();
+                    }
+                });
+            }
+        } finally {
+            PrimeStorage.setDirectory(previousDirectory);
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            directory.delete();
+        }
+    }
+
+    private static void controller(Benchmark benchmark, final long runMillis) throws Exception {
+        final long[] basePrimes = SegmentedSieveGenerator.oddPrimesUpTo(1_000_000L);
+        int available = Runtime.getRuntime().availableProcessors();
+        for (int cores = 1; cores <= available; cores *= 2) {
+            final int threads = cores;
+            benchmark.run("controller.throughput", Benchmark.params("cores", Integer.toString(threads)), blackhole -> {
+                PrimeList primes = new PrimeList();
+                primes.addAll(basePrimes, basePrimes.length);
+                BigDecimal start = BigDecimal.valueOf(1_000_000L);
+                PrimeGeneratorController controller = new PrimeGeneratorController(new PrimeResult(start, primes),
+                        threads);
+                Thread thread = new Thread(controller::startGenerating);
+                thread.start();
+                Thread.sleep(runMillis);
+                final AtomicReference<BigDecimal> reached = new AtomicReference<>();
+                controller.stopGenerating(() -> reached.set(controller.getResult().getMaxGenerated()));
+                thread.join();
+                return reached.get().subtract(start).longValueExact();
+            });
+        }
+    }
+
+    private static PrimeList firstOddPrimes(long count) {
+        //n (ln n + ln ln n) bounds the n-th prime from above for n >= 6
+        double n = Math.max(6, count + 1);
+        long bound = (long) (n * (Math.log(n) + Math.log(Math.log(n))));
+        long[] primes = SegmentedSieveGenerator.oddPrimesUpTo(bound);
+        PrimeList result = new PrimeList();
+        result.addAll(primes, (int) Math.min(count, primes.length));
+        return result;
+    }
+}
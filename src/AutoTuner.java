@@ -0,0 +1,320 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Tunes the sieve segment size, the range sizes and the thread count of a controller from the throughput of what it
+ * commits while it runs, and saves them to {@value #FILE_NAME} next to the primes for the next start on a machine
+ * with as many cores.
+ */
+public class AutoTuner {
+    static final String FILE_NAME = "tuning.properties";
+    //from half a typical L1 data cache up to a typical L2 cache
+    static final int[] SEGMENT_BYTES = {16 * 1024, 32 * 1024, 64 * 1024, 128 * 1024, 256 * 1024, 512 * 1024};
+    private static final int RANGES_PER_TRIAL = 4;
+    private static final double RETUNE_GROWTH = 16;
+    private static final double SMOOTHING = 0.25;
+    //how long each thread count is measured, after a window of the same length to settle in
+    private static final long THREAD_TRIAL_NANOS = 2_000_000_000L;
+    private static final long MIN_RANGE_SIZE = 5000;
+    private static final long MAX_RANGE_SIZE = 1 << 24;
+
+    private final File file;
+    private final int processors;
+    private final int[] threadCandidates;
+    //numbers per nanosecond of whole runs scaled to a common magnitude, 0 when not measured yet
+    private final double[] threadThroughput;
+    //summed numbers per nanosecond of single ranges, and how many ranges were summed
+    private final double[] segmentThroughput = new double[SEGMENT_BYTES.length];
+    private final int[] segmentSamples = new int[SEGMENT_BYTES.length];
+    private int nextTrial = 0;
+    private int segmentBytes = SegmentedSieveGenerator.DEFAULT_SEGMENT_BYTES;
+    private double numbersPerNanoSecond = 0;
+    private BigDecimal tunedAt = BigDecimal.ZERO;
+    //the window the current thread count is measured over, not started before the first commit
+    private int trialThreads = 0;
+    private boolean settling = true;
+    private BigDecimal trialStart = null;
+    private long trialStartNanos = 0;
+
+    /**
+     * @param maxGenerated where this start begins, to tell whether the saved tuning is still current
+     */
+    public AutoTuner(File directory, BigDecimal maxGenerated) {
+        this(directory, maxGenerated, Runtime.getRuntime().availableProcessors());
+    }
+
+    AutoTuner(File directory, BigDecimal maxGenerated, int processors) {
+        this.file = new File(directory, FILE_NAME);
+        this.processors = processors;
+        Set<Integer> candidates = new LinkedHashSet<>();
+        candidates.add(processors);
+        candidates.add(Math.max(1, processors - 1));
+        candidates.add(Math.max(1, processors / 2));
+        threadCandidates = candidates.stream().mapToInt(Integer::intValue).toArray();
+        threadThroughput = new double[threadCandidates.length];
+        if (file.exists()) {
+            try {
+                load(maxGenerated);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("tuning again: " + e.getMessage());
+            }
+        }
+    }
+
+    private void load(BigDecimal maxGenerated) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            properties.load(reader);
+        }
+        if (Integer.parseInt(properties.getProperty("processors", "0")) != processors) {
+            System.out.println("tuning again, the tuning was made on another number of cores.");
+            return;
+        }
+        segmentBytes = Integer.parseInt(properties.getProperty("segmentBytes", Integer.toString(segmentBytes)));
+        numbersPerNanoSecond = Double.parseDouble(properties.getProperty("numbersPerNanoSecond", "0"));
+        tunedAt = new BigDecimal(properties.getProperty("tunedAt", "0"));
+        if (tunedAt.signum() > 0 && maxGenerated.compareTo(tunedAt.multiply(BigDecimal.valueOf(RETUNE_GROWTH))) > 0) {
+            //the range sizes still make a better start than the defaults, the rest is measured again
+            tunedAt = BigDecimal.ZERO;
+            return;
+        }
+        for (int i = 0; i < SEGMENT_BYTES.length; ++i) {
+            segmentThroughput[i] = Double.parseDouble(properties.getProperty("segment." + SEGMENT_BYTES[i], "0"));
+            segmentSamples[i] = Integer.parseInt(properties.getProperty("segment." + SEGMENT_BYTES[i] + ".ranges",
+                    "0"));
+        }
+        for (int i = 0; i < threadCandidates.length; ++i) {
+            threadThroughput[i] = Double.parseDouble(properties.getProperty("threads." + threadCandidates[i], "0"));
+        }
+    }
+
+    /**
+     * @return the size of the pool the controller needs, the thread count never goes above it
+     */
+    public int getMaxThreads() {
+        return processors;
+    }
+
+    /**
+     * @return the thread count to generate with: the first candidate not measured yet, the fastest once all are
+     */
+    public synchronized int getThreads() {
+        int best = 0;
+        for (int i = 0; i < threadCandidates.length; ++i) {
+            if (threadThroughput[i] == 0) {
+                return threadCandidates[i];
+            }
+            if (threadThroughput[i] > threadThroughput[best]) {
+                best = i;
+            }
+        }
+        return threadCandidates[best];
+    }
+
+    /**
+     * Sets the segment and range sizes found so far, before the controller starts.
+     */
+    public synchronized void apply(PrimeGeneratorController controller) {
+        controller.setSegmentBytes(segmentBytes);
+        if (numbersPerNanoSecond > 0) {
+            double rangeSize = numbersPerNanoSecond * RangeScheduler.TARGET_RANGE_NANOS;
+            controller.setMinCalculationsPerCore(BigDecimal.valueOf(Math.max(MIN_RANGE_SIZE, (long) (rangeSize / 4))));
+            controller.setMaxCalculationsPerCore(BigDecimal.valueOf(Math.max(MAX_RANGE_SIZE, (long) (rangeSize * 2))));
+        }
+    }
+
+    public synchronized boolean isExploring() {
+        if (numbersPerNanoSecond == 0) {
+            return true;
+        }
+        for (int i = 0; i < SEGMENT_BYTES.length; ++i) {
+            if (isTried(i) && segmentSamples[i] < RANGES_PER_TRIAL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a single segment of the size fits in the ranges this machine generates
+     */
+    private boolean isTried(int trial) {
+        return getSegmentNumbers(SEGMENT_BYTES[trial]) <= getRangeSize();
+    }
+
+    /**
+     * @return the size the scheduler gives ranges at the measured throughput, as long as the default maximum allows
+     */
+    private long getRangeSize() {
+        return (long) Math.min(numbersPerNanoSecond * RangeScheduler.TARGET_RANGE_NANOS, MAX_RANGE_SIZE);
+    }
+
+    /**
+     * @return the numbers a segment of that size covers, it has a bit per odd number
+     */
+    private static long getSegmentNumbers(int segmentBytes) {
+        return 16L * segmentBytes;
+    }
+
+    /**
+     * @return the segment size for the next sieve range, the sizes take turns until each was measured
+     */
+    public synchronized int nextSegmentBytes() {
+        for (int tried = 0; tried < SEGMENT_BYTES.length; ++tried) {
+            int trial = nextTrial;
+            nextTrial = (nextTrial + 1) % SEGMENT_BYTES.length;
+            if (numbersPerNanoSecond > 0 && isTried(trial) && segmentSamples[trial] < RANGES_PER_TRIAL) {
+                return SEGMENT_BYTES[trial];
+            }
+        }
+        return segmentBytes;
+    }
+
+    /**
+     * Takes in the throughput of a committed sieve range generated with segments of that size.
+     */
+    public synchronized void record(int segmentBytes, PrimeGeneratorTiming timing) {
+        if (timing.getDurationInNanoSeconds() <= 0) {
+            return;
+        }
+        BigDecimal numbers = timing.getEndSearch().subtract(timing.getBeginSearch());
+        double measured = numbers.doubleValue() / timing.getDurationInNanoSeconds();
+        numbersPerNanoSecond = numbersPerNanoSecond == 0 ? measured
+                : numbersPerNanoSecond + SMOOTHING * (measured - numbersPerNanoSecond);
+        //the first ranges are short and dominated by scheduling, and a range shorter than a segment never used all
+        //of it, so only ranges of about the full size are compared
+        int trial = indexOf(segmentBytes);
+        long fullSize = Math.max(getSegmentNumbers(segmentBytes), getRangeSize() / 2);
+        if (trial < 0 || numbers.compareTo(BigDecimal.valueOf(fullSize)) < 0) {
+            return;
+        }
+        //later ranges are higher up and slower, so the sizes are only compared over the ranges of their turns
+        if (segmentSamples[trial] >= RANGES_PER_TRIAL) {
+            return;
+        }
+        segmentThroughput[trial] += measured;
+        ++segmentSamples[trial];
+        if (!isExploring()) {
+            int best = trial;
+            for (int i = 0; i < SEGMENT_BYTES.length; ++i) {
+                if (segmentSamples[i] > 0
+                        && segmentThroughput[i] / segmentSamples[i] > segmentThroughput[best] / segmentSamples[best]) {
+                    best = i;
+                }
+            }
+            this.segmentBytes = SEGMENT_BYTES[best];
+            if (tunedAt.signum() == 0) {
+                tunedAt = timing.getEndSearch();
+            }
+        }
+    }
+
+    /**
+     * Takes in the frontier after a commit. Every candidate takes a turn at generating, first for a window to settle
+     * in, as the ranges already running were started with the thread count before, then for a window measured.
+     *
+     * @return the number of threads that may generate from now on
+     */
+    public synchronized int recordProgress(BigDecimal maxGenerated, long nanoTime) {
+        if (trialStart == null || nanoTime - trialStartNanos < THREAD_TRIAL_NANOS) {
+            if (trialStart == null) {
+                startTrial(maxGenerated, nanoTime);
+            }
+            return trialThreads;
+        }
+        if (!settling) {
+            recordThroughput(trialThreads, trialStart, maxGenerated, nanoTime - trialStartNanos);
+        }
+        startTrial(maxGenerated, nanoTime);
+        return trialThreads;
+    }
+
+    private void startTrial(BigDecimal maxGenerated, long nanoTime) {
+        int threads = getThreads();
+        settling = threads != trialThreads;
+        trialThreads = threads;
+        trialStart = maxGenerated;
+        trialStartNanos = nanoTime;
+    }
+
+    private void recordThroughput(int threads, BigDecimal from, BigDecimal to, long nanos) {
+        int candidate = -1;
+        for (int i = 0; i < threadCandidates.length; ++i) {
+            if (threadCandidates[i] == threads) {
+                candidate = i;
+            }
+        }
+        if (candidate < 0) {
+            return;
+        }
+        double measured = to.subtract(from).doubleValue() / nanos * getSieveCost(from.add(to).doubleValue() / 2);
+        threadThroughput[candidate] = threadThroughput[candidate] == 0 ? measured
+                : threadThroughput[candidate] + SMOOTHING * (measured - threadThroughput[candidate]);
+    }
+
+    /**
+     * @return the relative work per number of sieving around the value, the candidates run at different magnitudes
+     * and are only compared after scaling by it
+     */
+    static double getSieveCost(double value) {
+        //crossing off by the sieving primes up to the square root takes about ln ln of it per number
+        return Math.log(Math.log(Math.sqrt(Math.max(value, 256))));
+    }
+
+    public synchronized int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public synchronized void save() {
+        Properties properties = new Properties();
+        properties.setProperty("processors", Integer.toString(processors));
+        properties.setProperty("segmentBytes", Integer.toString(segmentBytes));
+        properties.setProperty("numbersPerNanoSecond", Double.toString(numbersPerNanoSecond));
+        properties.setProperty("tunedAt", tunedAt.toPlainString());
+        for (int i = 0; i < SEGMENT_BYTES.length; ++i) {
+            properties.setProperty("segment." + SEGMENT_BYTES[i], Double.toString(segmentThroughput[i]));
+            properties.setProperty("segment." + SEGMENT_BYTES[i] + ".ranges", Integer.toString(segmentSamples[i]));
+        }
+        for (int i = 0; i < threadCandidates.length; ++i) {
+            properties.setProperty("threads." + threadCandidates[i], Double.toString(threadThroughput[i]));
+        }
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = new FileWriter(temporaryFile)) {
+            properties.store(writer, "tuning for " + processors + " cores");
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        try {
+            PrimeStorage.replace(temporaryFile, file);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static int indexOf(int segmentBytes) {
+        for (int i = 0; i < SEGMENT_BYTES.length; ++i) {
+            if (SEGMENT_BYTES[i] == segmentBytes) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int threads = getThreads();
+        return threads + (threads == 1 ? " thread, " : " threads, ") + segmentBytes / 1024 + " KB segments"
+                + (isExploring() ? " (still trying sizes)" : "")
+                + (numbersPerNanoSecond > 0 ? ", ranges of about "
+                + (long) (numbersPerNanoSecond * RangeScheduler.TARGET_RANGE_NANOS) + " numbers" : "");
+    }
+}
@@ -110,6 +110,24 @@ public class BigDecimalMath {
         return result.round(mathContext);
     }
 
+    /**
+     * Calculates the integer square root of {@link BigDecimal} x, the largest integer whose square is at most x.
+     * <p>
+     * <p>Unlike {@link #sqrt(BigDecimal, MathContext)} this needs no precision and no division, which makes it the one
+     * to use for bounds on divisors.</p>
+     *
+     * @param x the {@link BigDecimal} value to calculate the integer square root
+     * @return the integer square root of x, without a fraction
+     * @throws ArithmeticException if x &lt; 0
+     */
+    public static BigDecimal integerSqrt(BigDecimal x) {
+        if (x.signum() < 0) {
+            throw new ArithmeticException("Illegal integerSqrt(x) for x < 0: x = " + x);
+        }
+        //the fraction can't raise the root past the next integer, so it is left out
+        return new BigDecimal(x.toBigInteger().sqrt());
+    }
+
     public static BigDecimal min(BigDecimal bd1, BigDecimal bd2) {
         return bd1.compareTo(bd2) > 0 ? bd2 : bd1;
     }
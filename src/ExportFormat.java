@@ -0,0 +1,43 @@
+/**
+ * How the primes of an export block are encoded, see {@link PrimeExport}.
+ */
+public enum ExportFormat {
+    //one bit per odd number of the block, set for the primes, least significant bit first
+    BITSET("bitset", 0),
+    //per prime the half gap to the previous one as an unsigned LEB128 varint, one byte for gaps below 256
+    GAPS("gaps", 1);
+
+    private final String name;
+    private final int code;
+
+    ExportFormat(String name, int code) {
+        this.name = name;
+        this.code = code;
+    }
+
+    public static ExportFormat forName(String name) {
+        for (ExportFormat format : values()) {
+            if (format.name.equals(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("no export format " + name);
+    }
+
+    static ExportFormat forCode(long code) {
+        for (ExportFormat format : values()) {
+            if (format.code == code) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("no export format with code " + code);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    int getCode() {
+        return code;
+    }
+}
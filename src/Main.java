@@ -1,29 +1,369 @@
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class Main {
+    private static final int DEFAULT_QUERY_PORT = 8080;
+    //covers the sieving primes up to 4.6e18, larger results only live in the log
+    private static final long DEFAULT_RETENTION_LIMIT = 1L << 31;
+
     private static PrimeGeneratorController controller;
 
     public static void main(String[] args) {
+        if (args.length > 0 && "convert".equals(args[0])) {
+            PrimeStorage.convertTextFiles();
+            return;
+        }
+        if (args.length > 0 && "query".equals(args[0])) {
+            PrimeQueryService service = new PrimeQueryService(readPrimes());
+            startQueryServer(args, "--port", service, DEFAULT_QUERY_PORT);
+            return;
+        }
+        if (args.length > 0 && "export".equals(args[0])) {
+            export(args);
+            return;
+        }
+        if (args.length > 0 && "worker".equals(args[0])) {
+            new RangeWorker(option(args, "--host", "localhost"),
+                    Integer.parseInt(option(args, "--port", Integer.toString(RangeCoordinator.DEFAULT_PORT)))).run();
+            return;
+        }
         PrimeResult primeResult = PrimeStorage.get();
-        controller = new PrimeGeneratorController(primeResult);
-        Executors.newSingleThreadExecutor().submit(() -> controller.startGenerating());
+        PrimeLog primeLog = new PrimeLog(PrimeStorage.getLogDirectory());
+        //set before replaying, so the logged primes above the limit never reach the heap
+        primeResult.getAllPrimes().setRetentionLimit(retentionLimit(args));
         try {
-            Thread.sleep(60000);
+            primeResult = primeLog.replay(primeResult);
+            primeLog.setBackgroundCompaction(true);
+        } catch (IOException e) {
+            System.out.println("log unavailable, results are only saved at the end: " + e.getMessage());
+            primeLog = null;
+            primeResult.getAllPrimes().setRetentionLimit(Long.MAX_VALUE);
+        }
+        if (args.length > 0 && "coordinator".equals(args[0])) {
+            coordinate(args, primeResult, primeLog);
+            return;
+        }
+        AutoTuner autoTuner = null;
+        if (Arrays.asList(args).contains("--auto-tune")) {
+            autoTuner = new AutoTuner(new File(PrimeStorage.getDirectory()), primeResult.getMaxGenerated());
+            controller = new PrimeGeneratorController(primeResult, autoTuner.getMaxThreads());
+            autoTuner.apply(controller);
+            controller.setAutoTuner(autoTuner);
+        } else {
+            controller = new PrimeGeneratorController(primeResult);
+        }
+        controller.setPrimeLog(primeLog);
+        if (primeLog != null) {
+            controller.setRetentionLimit(retentionLimit(args));
+        }
+        addSinks(args, controller);
+        PrimeCountingSink countingSink = null;
+        if (Arrays.asList(args).contains("--count")) {
+            countingSink = new PrimeCountingSink();
+            controller.addSink(countingSink);
+        }
+        setWheel(args, controller);
+        setSieveKernel(args, controller);
+        controller.setVirtualThreads(Arrays.asList(args).contains("--virtual-threads"));
+        if (Arrays.asList(args).contains("--analytics")) {
+            try {
+                controller.addAnalytics(new PrimeAnalytics<>(new PrimeGapAnalyzer(), primeResult, primeLog));
+            } catch (IOException e) {
+                System.out.println("not started, the analytics could not be recounted: " + e.getMessage());
+                return;
+            }
+        }
+        try {
+            controller.setRunPolicy(createRunPolicy(args));
+        } catch (NumberFormatException | ArithmeticException e) {
+            System.out.println("not started, unreadable run target: " + e.getMessage());
+            return;
+        }
+        controller.getMetrics().registerMBean();
+        MetricsHttpServer metricsServer = startMetricsServer(args, controller.getMetrics());
+        PrimeQueryServer queryServer = startQueryServer(args, "--query-port",
+                new PrimeQueryService(controller::getResult), -1);
+        ExecutorService generating = Executors.newSingleThreadExecutor();
+        generating.submit(() -> controller.startGenerating());
+        generating.shutdown();
+        try {
+            controller.awaitCompletion();
+        } catch (IllegalStateException e) {
+            //the committed primes are contiguous, so they are still saved
+            System.out.println(e.getMessage());
+        }
+        if (countingSink != null) {
+            System.out.println(countingSink.getCount() + " primes found up to " + countingSink.getMaxGenerated()
+                    + ", the largest is " + countingSink.getLargestPrime() + ".");
+        }
+        long saveStart = System.nanoTime();
+        save();
+        System.out.println("saved in " + (System.nanoTime() - saveStart) / 1_000_000 + " ms.");
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        if (queryServer != null) {
+            queryServer.stop();
+        }
+    }
+
+    /**
+     * @return the saved primes and the checkpointed log on top of them, read only: the log belongs to a generator
+     * that may be running alongside
+     */
+    private static PrimeResult readPrimes() {
+        PrimeResult primeResult = PrimeStorage.get();
+        try {
+            return new PrimeLog(PrimeStorage.getLogDirectory()).read(primeResult);
+        } catch (IOException e) {
+            System.out.println("log unavailable, only the saved primes are used: " + e.getMessage());
+            return primeResult;
+        }
+    }
+
+    /**
+     * Exports the primes from --from up to --to, sieving past the saved ones, as --format gaps or bitset.
+     */
+    private static void export(String[] args) {
+        try {
+            long from = new BigDecimal(option(args, "--from", "0")).longValueExact();
+            String to = option(args, "--to", null);
+            if (to == null) {
+                throw new IllegalArgumentException("--to is missing");
+            }
+            long until = new BigDecimal(to).longValueExact();
+            ExportFormat format = ExportFormat.forName(option(args, "--format", ExportFormat.GAPS.getName()));
+            File file = new File(option(args, "--out", "primes-" + from + "-" + until + "." + format.getName()));
+            PrimeQueryService service = new PrimeQueryService(readPrimes());
+            long start = System.nanoTime();
+            long exported = PrimeExporter.export(file, service.range(from, until), from, until, format,
+                    Arrays.asList(args).contains("--deflate"));
+            System.out.println(exported + " primes exported to " + file + " (" + file.length() + " bytes) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        } catch (IllegalArgumentException | ArithmeticException | IOException e) {
+            System.out.println("not exported: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Leases ranges to worker processes (started with 'worker') instead of generating in this one.
+     */
+    private static void coordinate(String[] args, PrimeResult primeResult, PrimeLog primeLog) {
+        final RangeCoordinator coordinator;
+        try {
+            coordinator = new RangeCoordinator(primeResult,
+                    Integer.parseInt(option(args, "--port", Integer.toString(RangeCoordinator.DEFAULT_PORT))));
+        } catch (IOException e) {
+            System.out.println("coordinator not started: " + e.getMessage());
+            return;
+        }
+        coordinator.setPrimeLog(primeLog);
+        if (primeLog != null) {
+            coordinator.setRetentionLimit(retentionLimit(args));
+        }
+        coordinator.startCoordinating();
+        System.out.println("leasing ranges on port " + coordinator.getPort());
+        try {
+            String duration = option(args, "--duration", null);
+            Thread.sleep((duration == null ? RunPolicy.DEFAULT_DURATION_NANOS
+                    : RunPolicy.parseDurationNanos(duration)) / 1_000_000);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
-        controller.stopGenerating(Main::save);
+        coordinator.stopCoordinating(() -> {
+            save(coordinator.getPrimeLog(), coordinator.getResult());
+            printTimings(coordinator.getTimings());
+        });
+    }
+
+    /**
+     * @return --retain N, the largest prime kept in memory, the log keeps the ones above it
+     */
+    private static long retentionLimit(String[] args) {
+        return Long.parseLong(option(args, "--retain", Long.toString(DEFAULT_RETENTION_LIMIT)));
+    }
+
+    /**
+     * Runs until --until N, for --duration 10m, up to --primes N or within --max-heap 512m, whichever comes first.
+     * Without any of them a run takes a minute.
+     */
+    private static RunPolicy createRunPolicy(String[] args) {
+        RunPolicy runPolicy = new RunPolicy();
+        String until = option(args, "--until", null);
+        if (until != null) {
+            runPolicy.setUntilNumber(new BigDecimal(until.replace("_", "")).setScale(0, RoundingMode.FLOOR));
+        }
+        String duration = option(args, "--duration", null);
+        if (duration != null) {
+            runPolicy.setDurationNanos(RunPolicy.parseDurationNanos(duration));
+        }
+        String primes = option(args, "--primes", null);
+        if (primes != null) {
+            runPolicy.setPrimeCount(new BigDecimal(primes.replace("_", "")).longValueExact());
+        }
+        String maxHeap = option(args, "--max-heap", null);
+        if (maxHeap != null) {
+            runPolicy.setHeapBytes(RunPolicy.parseBytes(maxHeap));
+        }
+        return runPolicy.hasTarget() ? runPolicy : RunPolicy.forDefaultDuration();
+    }
+
+    /**
+     * Streams the primes to stdout with --print, or to a text file with --output file.
+     */
+    private static void addSinks(String[] args, PrimeGeneratorController controller) {
+        for (String arg : args) {
+            if ("--print".equals(arg)) {
+                controller.addSink(PrimeTextSink.toStandardOut());
+            }
+        }
+        String output = option(args, "--output", null);
+        if (output != null) {
+            try {
+                controller.addSink(PrimeTextSink.toFile(output, true));
+            } catch (IOException e) {
+                System.out.println("primes not written to " + output + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the argument following the given option, defaultValue without it
+     */
+    private static String option(String[] args, String option, String defaultValue) {
+        for (int i = 0; i + 1 < args.length; ++i) {
+            if (option.equals(args[i])) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Serves queries on the port following the given option, on defaultPort without it (none when negative).
+     */
+    private static PrimeQueryServer startQueryServer(String[] args, String option, PrimeQueryService service,
+                                                     int defaultPort) {
+        int port = defaultPort;
+        for (int i = 0; i + 1 < args.length; ++i) {
+            if (option.equals(args[i])) {
+                try {
+                    port = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    System.out.println("query server not started: " + e.getMessage());
+                    return null;
+                }
+            }
+        }
+        if (port < 0) {
+            return null;
+        }
+        try {
+            PrimeQueryServer server = new PrimeQueryServer(port, service);
+            server.start();
+            System.out.println("queries up to " + service.getMaxGenerated() + " on http://localhost:"
+                    + server.getPort() + "/");
+            return server;
+        } catch (IOException e) {
+            System.out.println("query server not started: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Picks the wheel when started with --wheel 30, 210 or 2310.
+     */
+    private static void setWheel(String[] args, PrimeGeneratorController controller) {
+        for (int i = 0; i + 1 < args.length; ++i) {
+            if ("--wheel".equals(args[i])) {
+                try {
+                    controller.setWheel(Wheel.forModulus(Integer.parseInt(args[i + 1])));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("keeping the default wheel: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the sieve kernel when started with --sieve-kernel pattern or scalar.
+     */
+    private static void setSieveKernel(String[] args, PrimeGeneratorController controller) {
+        String name = option(args, "--sieve-kernel", null);
+        if (name == null) {
+            return;
+        }
+        for (SieveKernel kernel : new SieveKernel[]{PatternSieveKernel.INSTANCE, ScalarSieveKernel.INSTANCE}) {
+            if (kernel.getName().equals(name)) {
+                controller.setSieveKernel(kernel);
+                return;
+            }
+        }
+        System.out.println("keeping the " + controller.getSieveKernel().getName() + " sieve kernel, unknown: " + name);
+    }
+
+    /**
+     * Serves the metrics over http when started with --metrics-port N.
+     */
+    private static MetricsHttpServer startMetricsServer(String[] args, PrimeMetrics metrics) {
+        for (int i = 0; i + 1 < args.length; ++i) {
+            if ("--metrics-port".equals(args[i])) {
+                try {
+                    MetricsHttpServer server = new MetricsHttpServer(Integer.parseInt(args[i + 1]), metrics);
+                    server.start();
+                    System.out.println("metrics on http://localhost:" + server.getPort() + "/metrics");
+                    return server;
+                } catch (IOException | NumberFormatException e) {
+                    System.out.println("metrics server not started: " + e.getMessage());
+                }
+            }
+        }
+        return null;
     }
 
     private static void save() {
-        System.out.println("all done.");
         if (controller == null) {
             throw new IllegalStateException("can't save without generating first.");
         }
-        PrimeStorage.save(controller.getResult());
+        long saveStart = System.nanoTime();
+        save(controller.getPrimeLog(), controller.getResult());
+        for (PrimeAnalytics<?> analytics : controller.getAnalytics()) {
+            analytics.save();
+            System.out.println(analytics.getName() + " up to " + analytics.getMaxGenerated() + ": " + analytics.getTotal());
+        }
+        if (controller.getAutoTuner() != null) {
+            controller.getAutoTuner().save();
+            System.out.println("tuned: " + controller.getAutoTuner());
+        }
+        controller.getMetrics().recordSave(System.nanoTime() - saveStart);
+        printTimings(controller.getTimings());
+    }
+
+    private static void save(PrimeLog primeLog, PrimeResult result) {
+        System.out.println("all done.");
+        if (primeLog != null && BigDecimal.valueOf(primeLog.getMaxGenerated()).compareTo(result.getMaxGenerated()) == 0) {
+            try {
+                primeLog.close();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                PrimeStorage.save(result);
+            }
+        } else {
+            PrimeStorage.save(result);
+        }
+    }
+
+    private static void printTimings(Collection<PrimeGeneratorTiming> timings) {
         System.out.println("timings:");
-        for (PrimeGeneratorTiming primeGeneratorTiming : controller.getTimings()) {
-            System.out.print("begin: ");
+        for (PrimeGeneratorTiming primeGeneratorTiming : timings) {
+            System.out.print(primeGeneratorTiming.getEngine());
+            System.out.print(" begin: ");
             System.out.print(StringFormatHelper
                     .formatNumber(primeGeneratorTiming
                             .getBeginSearch()));
@@ -0,0 +1,239 @@
+import java.math.BigInteger;
+
+/**
+ * Primality test that needs no stored primes.
+ * <p>
+ * <p>Inside the long range this is a deterministic Miller-Rabin test with Montgomery multiplication, using the
+ * witness set {2, 325, 9375, 28178, 450775, 9780504, 1795265022} that is exact for every n &lt; 2^64.
+ * Above it this is the Baillie-PSW test: a strong probable prime test to base 2 followed by a strong Lucas
+ * probable prime test with Selfridge's parameters, for which no counterexample is known.</p>
+ */
+public class MillerRabinTest implements PrimalityTest {
+    public static final MillerRabinTest INSTANCE = new MillerRabinTest();
+
+    private static final long[] WITNESSES = {2, 325, 9375, 28178, 450775, 9780504, 1795265022};
+    private static final int[] SMALL_PRIMES = {3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47};
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    //the test is shared by every generating thread, each one reuses its own arithmetic for every candidate
+    private static final ThreadLocal<Montgomery> MONTGOMERY = ThreadLocal.withInitial(Montgomery::new);
+
+    @Override
+    public String getName() {
+        return "miller-rabin/bpsw";
+    }
+
+    @Override
+    public boolean isPrime(long n) {
+        if (n < 2) {
+            return false;
+        }
+        if (n % 2 == 0) {
+            return n == 2;
+        }
+        for (int prime : SMALL_PRIMES) {
+            if (n % prime == 0) {
+                return n == prime;
+            }
+        }
+        if (n < 53 * 53) {
+            return true;
+        }
+        Montgomery montgomery = MONTGOMERY.get();
+        montgomery.reset(n);
+        return montgomery.isStrongProbablePrime();
+    }
+
+    @Override
+    public boolean isPrime(BigInteger n) {
+        if (n.compareTo(LONG_MAX) <= 0) {
+            return isPrime(n.longValue());
+        }
+        if (!n.testBit(0)) {
+            return false;
+        }
+        for (int prime : SMALL_PRIMES) {
+            if (n.mod(BigInteger.valueOf(prime)).signum() == 0) {
+                return false;
+            }
+        }
+        return isStrongProbablePrime(n, TWO) && isStrongLucasProbablePrime(n);
+    }
+
+    private static boolean isStrongProbablePrime(BigInteger n, BigInteger base) {
+        BigInteger nMinusOne = n.subtract(BigInteger.ONE);
+        int s = nMinusOne.getLowestSetBit();
+        BigInteger x = base.modPow(nMinusOne.shiftRight(s), n);
+        if (x.equals(BigInteger.ONE) || x.equals(nMinusOne)) {
+            return true;
+        }
+        for (int r = 1; r < s; ++r) {
+            x = x.multiply(x).mod(n);
+            if (x.equals(nMinusOne)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStrongLucasProbablePrime(BigInteger n) {
+        BigInteger root = n.sqrt();
+        if (root.multiply(root).equals(n)) {
+            return false;//no suitable D exists for squares
+        }
+        //Selfridge's method A: the first D in 5, -7, 9, -11, ... with jacobi(D, n) = -1, P = 1, Q = (1 - D) / 4
+        long d = 5;
+        while (true) {
+            int jacobi = jacobi(BigInteger.valueOf(d), n);
+            if (jacobi == -1) {
+                break;
+            }
+            if (jacobi == 0 && BigInteger.valueOf(Math.abs(d)).compareTo(n) != 0) {
+                return false;
+            }
+            d = d > 0 ? -(d + 2) : -(d - 2);
+        }
+        BigInteger bigD = BigInteger.valueOf(d);
+        BigInteger q = BigInteger.valueOf((1 - d) / 4);
+
+        BigInteger nPlusOne = n.add(BigInteger.ONE);
+        int s = nPlusOne.getLowestSetBit();
+        BigInteger k = nPlusOne.shiftRight(s);
+
+        BigInteger u = BigInteger.ONE;
+        BigInteger v = BigInteger.ONE;//V_1 = P
+        BigInteger qk = q.mod(n);
+        for (int bit = k.bitLength() - 2; bit >= 0; --bit) {
+            u = u.multiply(v).mod(n);
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            qk = qk.multiply(qk).mod(n);
+            if (k.testBit(bit)) {
+                BigInteger nextU = half(u.add(v), n);
+                v = half(bigD.multiply(u).add(v), n);
+                u = nextU;
+                qk = qk.multiply(q).mod(n);
+            }
+        }
+        if (u.signum() == 0 || v.signum() == 0) {
+            return true;
+        }
+        for (int r = 1; r < s; ++r) {
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            if (v.signum() == 0) {
+                return true;
+            }
+            qk = qk.multiply(qk).mod(n);
+        }
+        return false;
+    }
+
+    /**
+     * @return x / 2 modulo the odd n
+     */
+    private static BigInteger half(BigInteger x, BigInteger n) {
+        x = x.mod(n);
+        return (x.testBit(0) ? x.add(n) : x).shiftRight(1);
+    }
+
+    private static int jacobi(BigInteger a, BigInteger n) {
+        a = a.mod(n);
+        int result = 1;
+        while (a.signum() != 0) {
+            int twos = a.getLowestSetBit();
+            a = a.shiftRight(twos);
+            int nMod8 = n.intValue() & 7;
+            if ((twos & 1) == 1 && (nMod8 == 3 || nMod8 == 5)) {
+                result = -result;
+            }
+            if ((a.intValue() & 3) == 3 && (nMod8 & 3) == 3) {
+                result = -result;
+            }
+            BigInteger swap = a;
+            a = n.mod(swap);
+            n = swap;
+        }
+        return n.equals(BigInteger.ONE) ? result : 0;
+    }
+
+    /**
+     * Arithmetic modulo an odd n &lt; 2^63 in Montgomery form with R = 2^64, without any allocation per step.
+     * Reset to every next modulus, so no candidate allocates.
+     */
+    private static final class Montgomery {
+        private long n;
+        private long nPrime;//-n^-1 mod 2^64
+        private long one;//R mod n
+        private long rSquared;//R^2 mod n
+
+        private void reset(long n) {
+            this.n = n;
+            long inverse = n;//correct to 3 bits for odd n, every Newton step doubles that
+            for (int i = 0; i < 5; ++i) {
+                inverse *= 2 - n * inverse;
+            }
+            this.nPrime = -inverse;
+            this.one = Long.remainderUnsigned(-n, n);
+            long r = one;
+            for (int i = 0; i < 64; ++i) {
+                r <<= 1;//r < n < 2^63, so this can't overflow unsigned
+                if (Long.compareUnsigned(r, n) >= 0) {
+                    r -= n;
+                }
+            }
+            this.rSquared = r;
+        }
+
+        private long multiply(long a, long b) {
+            long low = a * b;
+            long high = unsignedMultiplyHigh(a, b);
+            long m = low * nPrime;
+            long mnLow = m * n;
+            long mnHigh = unsignedMultiplyHigh(m, n);
+            long carry = Long.compareUnsigned(low + mnLow, low) < 0 ? 1 : 0;
+            long t = high + mnHigh + carry;//below 2n < 2^64
+            return Long.compareUnsigned(t, n) >= 0 ? t - n : t;
+        }
+
+        private long power(long base, long exponent) {
+            long result = one;
+            while (exponent > 0) {
+                if ((exponent & 1) == 1) {
+                    result = multiply(result, base);
+                }
+                base = multiply(base, base);
+                exponent >>>= 1;
+            }
+            return result;
+        }
+
+        private boolean isStrongProbablePrime() {
+            long minusOne = n - one;
+            long d = n - 1;
+            int s = Long.numberOfTrailingZeros(d);
+            d >>>= s;
+            for (long witness : WITNESSES) {
+                long a = witness % n;
+                if (a == 0) {
+                    continue;
+                }
+                long x = power(multiply(a, rSquared), d);
+                if (x == one || x == minusOne) {
+                    continue;
+                }
+                boolean composite = true;
+                for (int r = 1; r < s && composite; ++r) {
+                    x = multiply(x, x);
+                    composite = x != minusOne;
+                }
+                if (composite) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long unsignedMultiplyHigh(long a, long b) {
+            return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+        }
+    }
+}
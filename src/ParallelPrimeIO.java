@@ -0,0 +1,334 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads and saves whole prime files in parallel: the file is cut in chunks, every chunk is parsed or encoded
+ * on a fork-join pool and the results are put together in order. Only a few chunks are in flight at a time,
+ * so a save never holds a second copy of the primes.
+ * <p>
+ * <p>Writes go through a {@link FileChannel} with a direct buffer and are forced to disk before returning,
+ * the caller renames the file into place afterwards.</p>
+ */
+public final class ParallelPrimeIO {
+    //primes per chunk, a multiple of the index interval so the index entries of a chunk are its own
+    static final int CHUNK_PRIMES = PrimeFile.DEFAULT_INDEX_INTERVAL * 1024;
+    //bytes of text per chunk when loading
+    static final int CHUNK_BYTES = 1 << 23;
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    private static ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private ParallelPrimeIO() {
+        // prevent instances
+    }
+
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public static void setPool(ForkJoinPool pool) {
+        ParallelPrimeIO.pool = pool;
+    }
+
+    /**
+     * Writes the primes in the binary format read by {@link PrimeFile}.
+     */
+    public static void writeBinary(File file, PrimeSource primes, long maxGenerated) throws IOException {
+        int indexInterval = PrimeFile.DEFAULT_INDEX_INTERVAL;
+        long count = primes.size();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.put(new byte[PrimeFile.HEADER_SIZE]);
+            //the chunks are encoded on their own, this one puts their index entries together
+            PrimeFileEncoder encoder = new PrimeFileEncoder(indexInterval, 0);
+            Deque<ForkJoinTask<PrimeFileEncoder>> inFlight = new ArrayDeque<>();
+            long nextChunk = 0;
+            long chunks = (count + CHUNK_PRIMES - 1) / CHUNK_PRIMES;
+            while (nextChunk < chunks || !inFlight.isEmpty()) {
+                while (nextChunk < chunks && inFlight.size() < maxInFlight()) {
+                    final long chunk = nextChunk++;
+                    inFlight.add(pool.submit(() -> encodeBinary(primes, chunk, indexInterval)));
+                }
+                PrimeFileEncoder encoded = inFlight.poll().join();
+                write(channel, buffer, encoded.getBytes(), encoded.getLength());
+                encoder.append(encoded);
+            }
+            byte[] index = encoder.encodeIndex();
+            write(channel, buffer, index, index.length);
+            flush(channel, buffer);
+            ByteBuffer header = ByteBuffer.wrap(encoder.encodeHeader(maxGenerated));
+            long headerPosition = 0;
+            while (header.hasRemaining()) {
+                headerPosition += channel.write(header, headerPosition);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static PrimeFileEncoder encodeBinary(PrimeSource primes, long chunk, int indexInterval) {
+        long first = chunk * CHUNK_PRIMES;
+        int chunkSize = (int) Math.min(CHUNK_PRIMES, primes.size() - first);
+        PrimeFileEncoder encoded = new PrimeFileEncoder(indexInterval, first, first == 0 ? 0 : primes.get(first - 1),
+                chunkSize * 2);
+        PrimitiveIterator.OfLong iterator = primes.iterator(primes.get(first), Long.MAX_VALUE);
+        for (int i = 0; i < chunkSize; ++i) {
+            encoded.add(iterator.nextLong());
+        }
+        return encoded;
+    }
+
+    /**
+     * Writes the primes as text, one per line and starting with 2, the format {@link #readText} reads.
+     */
+    public static void writeText(File file, PrimeSource primes, List<BigDecimal> largePrimes) throws IOException {
+        long count = primes.size();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            byte[] two = "2".getBytes(StandardCharsets.US_ASCII);
+            write(channel, buffer, two, two.length);
+            Deque<ForkJoinTask<EncodedChunk>> inFlight = new ArrayDeque<>();
+            long nextChunk = 0;
+            long chunks = (count + CHUNK_PRIMES - 1) / CHUNK_PRIMES;
+            while (nextChunk < chunks || !inFlight.isEmpty()) {
+                while (nextChunk < chunks && inFlight.size() < maxInFlight()) {
+                    final long chunk = nextChunk++;
+                    inFlight.add(pool.submit(() -> encodeText(primes, chunk)));
+                }
+                EncodedChunk encoded = inFlight.poll().join();
+                write(channel, buffer, encoded.bytes, encoded.length);
+            }
+            for (BigDecimal prime : largePrimes) {
+                byte[] line = ("\n" + prime.toPlainString()).getBytes(StandardCharsets.US_ASCII);
+                write(channel, buffer, line, line.length);
+            }
+            flush(channel, buffer);
+            channel.force(true);
+        }
+    }
+
+    private static EncodedChunk encodeText(PrimeSource primes, long chunk) {
+        long first = chunk * CHUNK_PRIMES;
+        int chunkSize = (int) Math.min(CHUNK_PRIMES, primes.size() - first);
+        //a newline and at most 19 digits per prime
+        EncodedChunk encoded = new EncodedChunk(chunkSize * 20);
+        PrimitiveIterator.OfLong iterator = primes.iterator(primes.get(first), Long.MAX_VALUE);
+        for (int i = 0; i < chunkSize; ++i) {
+            encoded.bytes[encoded.length++] = '\n';
+            encoded.putDigits(iterator.nextLong());
+        }
+        return encoded;
+    }
+
+    /**
+     * Reads a text file written by {@link #writeText}, 2 is left out like everywhere else.
+     */
+    public static PrimeList readText(File file) throws IOException {
+        PrimeList result = new PrimeList();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            Deque<ForkJoinTask<ParsedChunk>> inFlight = new ArrayDeque<>();
+            long nextStart = 0;
+            while (nextStart < length || !inFlight.isEmpty()) {
+                while (nextStart < length && inFlight.size() < maxInFlight()) {
+                    final long start = nextStart;
+                    final long end = Math.min(length, start + CHUNK_BYTES);
+                    nextStart = end;
+                    inFlight.add(pool.submit(() -> parseText(channel, start, end, length)));
+                }
+                ParsedChunk parsed = inFlight.poll().join();
+                result.addAll(parsed.primes, parsed.count);
+                for (BigDecimal prime : parsed.largePrimes) {
+                    result.add(prime);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses the lines that start inside [start, end), the last one may run past end.
+     */
+    private static ParsedChunk parseText(FileChannel channel, long start, long end, long length) throws IOException {
+        //one byte before the chunk tells whether its first line starts inside it or belongs to the previous chunk
+        long readStart = Math.max(0, start - 1);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - readStart));
+        read(channel, buffer, readStart);
+        byte[] bytes = buffer.array();
+        int position = (int) (start - readStart);
+        if (start > 0 && bytes[0] != '\n') {
+            while (position < bytes.length && bytes[position] != '\n') {
+                ++position;
+            }
+            ++position;
+        }
+        ParsedChunk parsed = new ParsedChunk();
+        StringBuilder tail = new StringBuilder();
+        while (position < bytes.length) {
+            int lineEnd = position;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                ++lineEnd;
+            }
+            if (lineEnd == bytes.length && end < length) {
+                //the last line continues in the next chunk, it is read here as the next chunk skips it
+                tail.append(new String(bytes, position, lineEnd - position, StandardCharsets.US_ASCII));
+                tail.append(readLineFrom(channel, end, length));
+                parsed.addLine(tail.toString());
+                break;
+            }
+            parsed.addLine(bytes, position, lineEnd);
+            position = lineEnd + 1;
+        }
+        return parsed;
+    }
+
+    private static String readLineFrom(FileChannel channel, long position, long length) throws IOException {
+        StringBuilder line = new StringBuilder();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        while (position < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            read(channel, buffer, position);
+            position += buffer.limit();
+            for (int i = 0; i < buffer.limit(); ++i) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    return line.toString();
+                }
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("file shrunk while reading");
+            }
+            position += read;
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (!buffer.hasRemaining()) {
+                flush(channel, buffer);
+            }
+            int part = Math.min(length - offset, buffer.remaining());
+            buffer.put(bytes, offset, part);
+            offset += part;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int maxInFlight() {
+        return 2 * pool.getParallelism();
+    }
+
+    private static class EncodedChunk {
+        private byte[] bytes;
+        private int length = 0;
+
+        private EncodedChunk(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        private void putDigits(long value) {
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) {
+                ++digits;
+            }
+            ensureCapacity(digits);
+            for (int i = length + digits - 1; i >= length; --i) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+        }
+    }
+
+    private static class ParsedChunk {
+        private long[] primes = new long[1024];
+        private int count = 0;
+        private final List<BigDecimal> largePrimes = new ArrayList<>();
+
+        private void addLine(byte[] bytes, int start, int end) {
+            if (end > start && bytes[end - 1] == '\r') {
+                --end;
+            }
+            //up to 18 digits always fit a long, longer lines go through BigDecimal
+            if (end - start > 18) {
+                addLine(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+                return;
+            }
+            if (end == start) {
+                return;
+            }
+            long value = 0;
+            for (int i = start; i < end; ++i) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new NumberFormatException("not a prime: "
+                            + new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+                }
+                value = value * 10 + digit;
+            }
+            add(value);
+        }
+
+        private void addLine(String line) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                return;
+            }
+            BigDecimal value = new BigDecimal(line);
+            if (value.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) <= 0) {
+                add(value.longValueExact());
+            } else {
+                largePrimes.add(value);
+            }
+        }
+
+        private void add(long value) {
+            //2 is never generated, the generators only look at odd numbers
+            if (value == 2) {
+                return;
+            }
+            if (count == primes.length) {
+                primes = Arrays.copyOf(primes, count * 2);
+            }
+            primes[count++] = value;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Sieves the smallest primes a whole word at a time. Their multiples repeat in fixed bit patterns, so a segment
+ * starts as a copy of the pattern of 3, 5, 7, 11 and 13 together, and every prime up to 61 is or-ed in from a
+ * table of its pattern at each shift. Only the larger primes are crossed off bit by bit.
+ */
+public class PatternSieveKernel implements SieveKernel {
+    private static final long[] PRESIEVE_PRIMES = {3, 5, 7, 11, 13};
+    //3 * 5 * 7 * 11 * 13, the pattern of all of them repeats after this many odd numbers
+    private static final int PRESIEVE_PERIOD = 15015;
+    private static final long[] PATTERN_PRIMES = {17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61};
+    private static final long LARGEST_PATTERN_PRIME = 61;
+    //made after the primes above, the tables are built from them
+    public static final PatternSieveKernel INSTANCE = new PatternSieveKernel();
+
+    //bit j is set when the odd number 2j + 1 is a multiple of a presieve prime, one word longer than the period
+    private final long[] presieve;
+    //word o of the table of a prime holds the multiples among the odd numbers 2(o + b) + 1, for bit b
+    private final long[][] patterns;
+
+    private PatternSieveKernel() {
+        presieve = new long[(PRESIEVE_PERIOD + 63) / 64 + 1];
+        for (int j = 0; j < presieve.length * 64; ++j) {
+            for (long prime : PRESIEVE_PRIMES) {
+                if ((2L * j + 1) % prime == 0) {
+                    presieve[j >>> 6] |= 1L << j;
+                    break;
+                }
+            }
+        }
+        patterns = new long[PATTERN_PRIMES.length][];
+        for (int i = 0; i < PATTERN_PRIMES.length; ++i) {
+            int prime = (int) PATTERN_PRIMES[i];
+            patterns[i] = new long[prime];
+            for (int offset = 0; offset < prime; ++offset) {
+                for (int bit = 0; bit < 64; ++bit) {
+                    if ((2L * (offset + bit) + 1) % prime == 0) {
+                        patterns[i][offset] |= 1L << bit;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "pattern";
+    }
+
+    @Override
+    public void sieve(long[] segment, long low, int bits, long[] sievingPrimes) {
+        int words = (bits + 63) >>> 6;
+        //low is the odd number 2j + 1 with j = (low - 1) / 2
+        long first = (low - 1) >>> 1;
+        int offset = (int) (first % PRESIEVE_PERIOD);
+        for (int word = 0; word < words; ++word) {
+            int index = offset >>> 6;
+            int shift = offset & 63;
+            segment[word] = shift == 0 ? presieve[index]
+                    : presieve[index] >>> shift | presieve[index + 1] << (64 - shift);
+            offset += 64;
+            if (offset >= PRESIEVE_PERIOD) {
+                offset -= PRESIEVE_PERIOD;
+            }
+        }
+        for (int i = 0; i < patterns.length; ++i) {
+            long[] pattern = patterns[i];
+            int prime = pattern.length;
+            int step = 64 % prime;
+            int patternOffset = (int) (first % prime);
+            for (int word = 0; word < words; ++word) {
+                segment[word] |= pattern[patternOffset];
+                patternOffset += step;
+                if (patternOffset >= prime) {
+                    patternOffset -= prime;
+                }
+            }
+        }
+        if (low <= LARGEST_PATTERN_PRIME) {
+            //the patterns mark the primes themselves as well, and 1 is not a prime
+            segment[0] |= low == 1 ? 1L : 0L;
+            unmark(segment, low, bits, PRESIEVE_PRIMES);
+            unmark(segment, low, bits, PATTERN_PRIMES);
+        }
+        int firstLarger = 0;
+        while (firstLarger < sievingPrimes.length && sievingPrimes[firstLarger] <= LARGEST_PATTERN_PRIME) {
+            ++firstLarger;
+        }
+        ScalarSieveKernel.crossOff(segment, low, bits, sievingPrimes, firstLarger);
+    }
+
+    private static void unmark(long[] segment, long low, int bits, long[] primes) {
+        for (long prime : primes) {
+            long index = (prime - low) >>> 1;
+            if (prime >= low && index < bits) {
+                segment[(int) (index >>> 6)] &= ~(1L << index);
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+import java.math.BigInteger;
+
+public interface PrimalityTest {
+    String getName();
+
+    boolean isPrime(long n);
+
+    boolean isPrime(BigInteger n);
+}
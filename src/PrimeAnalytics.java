@@ -0,0 +1,136 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.PrimitiveIterator;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The running total of one {@link PrimeAnalyzer}, saved next to the primes so the next run continues from it.
+ * Without a saved total, or one behind the primes, the missing part is summarised from the stored primes once,
+ * and from the log for the primes past the retention limit of the list.
+ */
+public class PrimeAnalytics<S> {
+    private static final String FILE_EXTENSION = ".stats";
+    private static final String MAX_GENERATED = "maxGenerated";
+    private static final int SUMMARY_CHUNK = 1 << 20;
+
+    private final PrimeAnalyzer<S> analyzer;
+    private volatile S total;
+    private volatile BigDecimal maxGenerated;
+
+    /**
+     * @param primeLog the log the primes were replayed from, only needed when the list dropped some of them
+     */
+    public PrimeAnalytics(PrimeAnalyzer<S> analyzer, PrimeResult primeResult, PrimeLog primeLog) throws IOException {
+        this.analyzer = analyzer;
+        this.maxGenerated = primeResult.getMaxGenerated();
+        S saved = null;
+        long savedMaxGenerated = 0;
+        File file = getFile();
+        if (file.exists()) {
+            Properties properties = new Properties();
+            try (Reader reader = new FileReader(file)) {
+                properties.load(reader);
+                BigDecimal savedUpTo = new BigDecimal(properties.getProperty(MAX_GENERATED));
+                //statistics past the primes belong to a run whose results got lost, they can't be trusted
+                if (savedUpTo.compareTo(maxGenerated) <= 0) {
+                    saved = analyzer.load(properties);
+                    savedMaxGenerated = savedUpTo.longValueExact();
+                }
+            } catch (Exception e) {
+                System.out.println("recounting " + analyzer.getName() + ": " + e.getMessage());
+            }
+        }
+        PrimeList primes = primeResult.getAllPrimes();
+        long to = maxGenerated.min(BigDecimal.valueOf(Long.MAX_VALUE)).longValue();
+        //the list holds every prime up to its retention limit, the ones past it are only in the log
+        long held = primes.getDroppedPrimes() > 0 ? Math.min(to, primes.getRetentionLimit()) : to;
+        S missing = summarise(primes, savedMaxGenerated + 1, held);
+        if (held < to) {
+            if (primeLog == null) {
+                throw new IllegalStateException("the primes past " + held + " are only in the log");
+            }
+            missing = analyzer.merge(missing, summarise(primeLog, Math.max(held, savedMaxGenerated) + 1, to));
+        }
+        this.total = saved == null ? missing : analyzer.merge(saved, missing);
+    }
+
+    private S summarise(PrimeLog primeLog, long from, long to) throws IOException {
+        AtomicReference<S> summary = new AtomicReference<>(
+                analyzer.summarise(new PrimeBatch(BigDecimal.valueOf(from), BigDecimal.valueOf(to), new long[0], 0)));
+        primeLog.read(from, to, batch -> summary.set(analyzer.merge(summary.get(), analyzer.summarise(batch))));
+        return summary.get();
+    }
+
+    private S summarise(PrimeList primes, long from, long to) {
+        S summary = null;
+        long[] chunk = new long[SUMMARY_CHUNK];
+        PrimitiveIterator.OfLong iterator = primes.iterator(from, to);
+        do {
+            int count = 0;
+            while (count < chunk.length && iterator.hasNext()) {
+                chunk[count++] = iterator.nextLong();
+            }
+            S part = analyzer.summarise(new PrimeBatch(BigDecimal.valueOf(from), BigDecimal.valueOf(to), chunk, count));
+            summary = summary == null ? part : analyzer.merge(summary, part);
+        } while (iterator.hasNext());
+        return summary;
+    }
+
+    public String getName() {
+        return analyzer.getName();
+    }
+
+    /**
+     * Runs on the generating threads, the summary is added once the range is committed.
+     */
+    Object summarise(PrimeBatch batch) {
+        return analyzer.summarise(batch);
+    }
+
+    /**
+     * @param summary made by {@link #summarise(PrimeBatch)} for the batch ending at to
+     */
+    @SuppressWarnings("unchecked")
+    synchronized void add(Object summary, BigDecimal to) {
+        total = analyzer.merge(total, (S) summary);
+        maxGenerated = to;
+    }
+
+    public S getTotal() {
+        return total;
+    }
+
+    public BigDecimal getMaxGenerated() {
+        return maxGenerated;
+    }
+
+    public synchronized void save() {
+        Properties properties = new Properties();
+        S currentTotal = total;
+        properties.setProperty(MAX_GENERATED, maxGenerated.toPlainString());
+        analyzer.store(currentTotal, properties);
+        File file = getFile();
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = new FileWriter(temporaryFile)) {
+            properties.store(writer, analyzer.getName() + " up to " + maxGenerated.toPlainString());
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        try {
+            PrimeStorage.replace(temporaryFile, file);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private File getFile() {
+        return new File(PrimeStorage.getDirectory() + "/" + analyzer.getName() + FILE_EXTENSION);
+    }
+}
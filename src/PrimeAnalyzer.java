@@ -0,0 +1,25 @@
+import java.util.Properties;
+
+/**
+ * Statistics gathered while generating. Every range is summarised on the thread that generated it, the summaries
+ * are merged in commit order, so the statistics cost little on top of generation.
+ *
+ * @param <S> the summary, treated as immutable once made
+ */
+public interface PrimeAnalyzer<S> {
+    /**
+     * @return the name the statistics are saved under
+     */
+    String getName();
+
+    S summarise(PrimeBatch batch);
+
+    /**
+     * @return the summary of both, later covers the numbers directly after earlier
+     */
+    S merge(S earlier, S later);
+
+    void store(S summary, Properties properties);
+
+    S load(Properties properties);
+}
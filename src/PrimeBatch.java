@@ -0,0 +1,57 @@
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The primes of one committed range, as they flow through the output pipeline.
+ * The arrays are handed over, not copied, so they must not be changed after publishing.
+ */
+public class PrimeBatch {
+    private final BigDecimal from;
+    private final BigDecimal to;
+    private final long[] primes;
+    private final int count;
+    private final List<BigDecimal> largePrimes;
+
+    public PrimeBatch(BigDecimal from, BigDecimal to, long[] primes, int count, List<BigDecimal> largePrimes) {
+        this.from = from;
+        this.to = to;
+        this.primes = primes;
+        this.count = count;
+        this.largePrimes = largePrimes;
+    }
+
+    public PrimeBatch(BigDecimal from, BigDecimal to, long[] primes, int count) {
+        this(from, to, primes, count, Collections.emptyList());
+    }
+
+    public BigDecimal getFrom() {
+        return from;
+    }
+
+    public BigDecimal getTo() {
+        return to;
+    }
+
+    /**
+     * @return the primes inside the long range, only the first {@link #getCount()} are valid
+     */
+    public long[] getPrimes() {
+        return primes;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the primes beyond the long range, they come after every prime in {@link #getPrimes()}
+     */
+    public List<BigDecimal> getLargePrimes() {
+        return largePrimes;
+    }
+
+    public long size() {
+        return count + largePrimes.size();
+    }
+}
@@ -0,0 +1,34 @@
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the published primes and remembers the largest one, without keeping any of them.
+ */
+public class PrimeCountingSink extends PrimeSink {
+    private final LongAdder count = new LongAdder();
+    private volatile BigDecimal largestPrime = null;
+    private volatile BigDecimal maxGenerated = null;
+
+    @Override
+    protected void accept(PrimeBatch batch) {
+        count.add(batch.size());
+        if (!batch.getLargePrimes().isEmpty()) {
+            largestPrime = batch.getLargePrimes().get(batch.getLargePrimes().size() - 1);
+        } else if (batch.getCount() > 0) {
+            largestPrime = BigDecimal.valueOf(batch.getPrimes()[batch.getCount() - 1]);
+        }
+        maxGenerated = batch.getTo();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public BigDecimal getLargestPrime() {
+        return largestPrime;
+    }
+
+    public BigDecimal getMaxGenerated() {
+        return maxGenerated;
+    }
+}
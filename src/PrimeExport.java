@@ -0,0 +1,255 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only view of an export written by {@link PrimeExporter}: the odd primes of a range, in blocks that can be
+ * decoded on their own.
+ * <p>
+ * <p>Layout: a {@value #HEADER_SIZE} byte header of big endian longs (magic, version, format, flags, from, to,
+ * block span, block count), an index of {@value #INDEX_ENTRY_SIZE} bytes per block (offset, stored length,
+ * decoded length, number of primes) and the blocks. Block i covers the odd numbers from + i * block span up to
+ * the next block or to, encoded as {@link ExportFormat} says and deflated when flag {@value #DEFLATED} is set.</p>
+ */
+public class PrimeExport implements Closeable {
+    public static final int HEADER_SIZE = 64;
+    public static final int INDEX_ENTRY_SIZE = 32;
+    public static final long MAGIC = 0x5052494D45455850L;//"PRIMEEXP"
+    public static final long VERSION = 1;
+    public static final long DEFLATED = 1;
+
+    private final FileChannel channel;
+    private final ExportFormat format;
+    private final boolean deflated;
+    private final long from;
+    private final long to;
+    private final long blockSpan;
+    private final long[] index;
+
+    private PrimeExport(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = read(0, HEADER_SIZE);
+        if (header.getLong() != MAGIC) {
+            throw new IOException("not a prime export, wrong magic number");
+        }
+        long version = header.getLong();
+        if (version != VERSION) {
+            throw new IOException("unsupported prime export version " + version);
+        }
+        format = ExportFormat.forCode(header.getLong());
+        deflated = (header.getLong() & DEFLATED) != 0;
+        from = header.getLong();
+        to = header.getLong();
+        blockSpan = header.getLong();
+        int blocks = (int) header.getLong();
+        ByteBuffer entries = read(HEADER_SIZE, blocks * INDEX_ENTRY_SIZE);
+        index = new long[blocks * 4];
+        for (int i = 0; i < index.length; ++i) {
+            index[i] = entries.getLong();
+        }
+    }
+
+    public static PrimeExport open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new PrimeExport(channel);
+        } catch (IOException | IllegalArgumentException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+    }
+
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    public boolean isDeflated() {
+        return deflated;
+    }
+
+    /**
+     * @return the first odd number covered
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public int getBlockCount() {
+        return index.length / 4;
+    }
+
+    /**
+     * @return the number of odd primes exported
+     */
+    public long getCount() {
+        long count = 0;
+        for (int block = 0; block < getBlockCount(); ++block) {
+            count += index[4 * block + 3];
+        }
+        return count;
+    }
+
+    public long getBlockStart(int block) {
+        return from + block * blockSpan;
+    }
+
+    public long getBlockEnd(int block) {
+        return Math.min(getBlockStart(block) + blockSpan - 2, to);
+    }
+
+    /**
+     * @return the primes of one block, read and decoded on their own
+     */
+    public long[] readBlock(int block) throws IOException {
+        ByteBuffer stored = read(index[4 * block], (int) index[4 * block + 1]);
+        byte[] bytes = stored.array();
+        int length = (int) index[4 * block + 2];
+        if (deflated) {
+            bytes = inflate(bytes, length);
+        }
+        long[] primes = new long[(int) index[4 * block + 3]];
+        long start = getBlockStart(block);
+        if (format == ExportFormat.BITSET) {
+            int count = 0;
+            for (int i = 0; i < length; ++i) {
+                int bits = bytes[i] & 0xFF;
+                while (bits != 0) {
+                    primes[count++] = start + 2L * (8L * i + Integer.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        } else {
+            //the first gap is taken from the odd number before the block
+            long last = start - 2;
+            int position = 0;
+            for (int i = 0; i < primes.length; ++i) {
+                long halfGap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    halfGap |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                last += 2 * halfGap;
+                primes[i] = last;
+            }
+        }
+        return primes;
+    }
+
+    private static byte[] inflate(byte[] stored, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] bytes = new byte[length];
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int count = inflater.inflate(bytes, inflated, length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != length) {
+                throw new IOException("export block is truncated");
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException("export block is corrupt: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return an ascending iterator over the exported primes p with from &lt;= p &lt;= to, decoding a block at a time
+     */
+    public PrimitiveIterator.OfLong iterator(final long from, final long to) {
+        return new PrimitiveIterator.OfLong() {
+            private int block = from <= PrimeExport.this.from ? 0
+                    : (int) Math.min(getBlockCount(), (from - PrimeExport.this.from) / blockSpan);
+            private long[] primes = new long[0];
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (true) {
+                    while (position < primes.length && primes[position] < from) {
+                        ++position;
+                    }
+                    if (position < primes.length) {
+                        return primes[position] <= to;
+                    }
+                    if (block >= getBlockCount() || getBlockStart(block) > to) {
+                        return false;
+                    }
+                    try {
+                        primes = readBlock(block++);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("can't read the export: " + e.getMessage(), e);
+                    }
+                    position = 0;
+                }
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return primes[position++];
+            }
+        };
+    }
+
+    /**
+     * Sends the whole export as is, by {@link FileChannel#transferTo}. Only to a file or socket channel does the
+     * operating system move the bytes without copying them through the heap, other channels get a buffered copy.
+     */
+    public void transferTo(WritableByteChannel target) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            position += channel.transferTo(position, size - position, target);
+        }
+    }
+
+    public void transferTo(OutputStream out) throws IOException {
+        //file streams are sent through their own channel, other streams get a copy through a buffer
+        transferTo(out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out));
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("prime export is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
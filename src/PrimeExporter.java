@@ -0,0 +1,190 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a range of primes in the export format read by {@link PrimeExport}. The primes are read in order, every
+ * block is encoded and deflated on the pool of {@link ParallelPrimeIO} and the blocks are written in order, so
+ * only a few blocks are held at a time.
+ */
+public final class PrimeExporter {
+    //numbers per block, a block of the bitset format takes a megabyte before deflating
+    static final long DEFAULT_BLOCK_SPAN = 1L << 24;
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private PrimeExporter() {
+        // prevent instances
+    }
+
+    /**
+     * @param primes ascending primes covering from up to to, those outside it and 2 are left out
+     * @return the number of primes exported
+     */
+    public static long export(File file, PrimitiveIterator.OfLong primes, long from, long to, ExportFormat format,
+                              boolean deflate) throws IOException {
+        return export(file, primes, from, to, format, deflate, DEFAULT_BLOCK_SPAN);
+    }
+
+    static long export(File file, PrimitiveIterator.OfLong primes, long from, long to, ExportFormat format,
+                       boolean deflate, long blockSpan) throws IOException {
+        if (blockSpan <= 0 || blockSpan % 2 != 0 || blockSpan / 2 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("the block span has to be even and positive: " + blockSpan);
+        }
+        //the bitset has a bit per odd number, so the blocks start on odd numbers
+        from = Math.max(1, from % 2 == 0 ? from + 1 : from);
+        long blockCount = to < from ? 0 : (to - from) / blockSpan + 1;
+        if (blockCount > (Integer.MAX_VALUE - PrimeExport.HEADER_SIZE) / PrimeExport.INDEX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("too many blocks of " + blockSpan + " numbers from " + from + " to " + to);
+        }
+        int blocks = (int) blockCount;
+        ForkJoinPool pool = ParallelPrimeIO.getPool();
+        long[] index = new long[blocks * 4];
+        long exported = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = PrimeExport.HEADER_SIZE + (long) blocks * PrimeExport.INDEX_ENTRY_SIZE;
+            Deque<ForkJoinTask<EncodedBlock>> inFlight = new ArrayDeque<>();
+            long pending = 0;
+            int nextBlock = 0;
+            int written = 0;
+            while (written < blocks) {
+                while (nextBlock < blocks && inFlight.size() < 2 * pool.getParallelism()) {
+                    final long start = from + nextBlock * blockSpan;
+                    final long end = Math.min(start + blockSpan - 2, to);
+                    long[] blockPrimes = new long[64];
+                    int count = 0;
+                    while (pending != 0 || primes.hasNext()) {
+                        long prime = pending != 0 ? pending : primes.nextLong();
+                        pending = 0;
+                        if (prime > end) {
+                            //the first prime of a next block
+                            pending = prime;
+                            break;
+                        }
+                        if (prime >= start && prime % 2 != 0) {
+                            if (count == blockPrimes.length) {
+                                blockPrimes = Arrays.copyOf(blockPrimes, count * 2);
+                            }
+                            blockPrimes[count++] = prime;
+                        }
+                    }
+                    final long[] encodedPrimes = blockPrimes;
+                    final int encodedCount = count;
+                    inFlight.add(pool.submit(() -> encode(encodedPrimes, encodedCount, start, end, format, deflate)));
+                    ++nextBlock;
+                }
+                EncodedBlock encoded = inFlight.poll().join();
+                index[4 * written] = position;
+                index[4 * written + 1] = encoded.length;
+                index[4 * written + 2] = encoded.rawLength;
+                index[4 * written + 3] = encoded.count;
+                write(channel, ByteBuffer.wrap(encoded.bytes, 0, encoded.length), position);
+                position += encoded.length;
+                exported += encoded.count;
+                ++written;
+            }
+            //the header and index go in last, a partly written export doesn't open
+            ByteBuffer header = ByteBuffer.allocate(PrimeExport.HEADER_SIZE + blocks * PrimeExport.INDEX_ENTRY_SIZE);
+            header.putLong(PrimeExport.MAGIC);
+            header.putLong(PrimeExport.VERSION);
+            header.putLong(format.getCode());
+            header.putLong(deflate ? PrimeExport.DEFLATED : 0);
+            header.putLong(from);
+            header.putLong(to);
+            header.putLong(blockSpan);
+            header.putLong(blocks);
+            for (long entry : index) {
+                header.putLong(entry);
+            }
+            header.flip();
+            write(channel, header, 0);
+            channel.force(true);
+        }
+        return exported;
+    }
+
+    private static EncodedBlock encode(long[] primes, int count, long start, long end, ExportFormat format,
+                                       boolean deflate) {
+        EncodedBlock encoded;
+        if (format == ExportFormat.BITSET) {
+            int bits = (int) ((end - start) / 2 + 1);
+            encoded = new EncodedBlock(new byte[(bits + 7) >>> 3], count);
+            for (int i = 0; i < count; ++i) {
+                long bit = (primes[i] - start) >>> 1;
+                encoded.bytes[(int) (bit >>> 3)] |= (byte) (1 << (bit & 7));
+            }
+            encoded.length = encoded.bytes.length;
+        } else {
+            encoded = new EncodedBlock(new byte[count * 2 + MAX_VARINT_BYTES], count);
+            long last = start - 2;
+            for (int i = 0; i < count; ++i) {
+                encoded.putVarint((primes[i] - last) >>> 1);
+                last = primes[i];
+            }
+        }
+        encoded.rawLength = encoded.length;
+        if (deflate) {
+            encoded.deflate();
+        }
+        return encoded;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static class EncodedBlock {
+        private byte[] bytes;
+        private int length = 0;
+        private int rawLength;
+        private final int count;
+
+        private EncodedBlock(byte[] bytes, int count) {
+            this.bytes = bytes;
+            this.count = count;
+        }
+
+        private void putVarint(long value) {
+            if (length + MAX_VARINT_BYTES > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void deflate() {
+            //the fastest level, so deflating keeps up with the disk
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(bytes, 0, length);
+                deflater.finish();
+                byte[] deflated = new byte[length + length / 16 + 64];
+                int deflatedLength = 0;
+                while (!deflater.finished()) {
+                    if (deflatedLength == deflated.length) {
+                        deflated = Arrays.copyOf(deflated, deflated.length * 2);
+                    }
+                    deflatedLength += deflater.deflate(deflated, deflatedLength, deflated.length - deflatedLength);
+                }
+                bytes = deflated;
+                length = deflatedLength;
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Read-only, memory mapped view of a binary prime file.
+ * <p>
+ * <p>Layout: a {@value #HEADER_SIZE} byte header of big endian longs (magic, version, maxGenerated, count,
+ * last prime, index interval, index offset, index entries), the primes as unsigned LEB128 varints
+ * (the first one as is, every next one as half the gap to its predecessor) and a sparse index holding
+ * the value and varint offset of every index-interval-th prime.</p>
+ */
+public class PrimeFile implements PrimeSource, Closeable {
+    public static final int HEADER_SIZE = 64;
+    public static final long MAGIC = 0x5052494D45534249L;//"PRIMESBI"
+    public static final long VERSION = 1;
+    public static final int DEFAULT_INDEX_INTERVAL = 1024;
+
+    private static final int REGION_BITS = 30;
+    private static final long REGION_MASK = (1L << REGION_BITS) - 1;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] regions;
+    private final long maxGenerated;
+    private final long count;
+    private final long lastPrime;
+    private final int indexInterval;
+    private final long indexOffset;
+    private final long indexEntries;
+
+    private PrimeFile(RandomAccessFile file) throws IOException {
+        this.file = file;
+        FileChannel channel = file.getChannel();
+        long length = channel.size();
+        if (length < HEADER_SIZE) {
+            throw new IOException("not a prime file, too short");
+        }
+        regions = new MappedByteBuffer[(int) ((length + REGION_MASK) >>> REGION_BITS)];
+        for (int i = 0; i < regions.length; ++i) {
+            long start = (long) i << REGION_BITS;
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length - start, 1L << REGION_BITS));
+        }
+        if (getLong(0) != MAGIC) {
+            throw new IOException("not a prime file, wrong magic number");
+        }
+        if (getLong(8) != VERSION) {
+            throw new IOException("unsupported prime file version " + getLong(8));
+        }
+        maxGenerated = getLong(16);
+        count = getLong(24);
+        lastPrime = getLong(32);
+        indexInterval = (int) getLong(40);
+        indexOffset = getLong(48);
+        indexEntries = getLong(56);
+        if (indexOffset + indexEntries * 16 > length) {
+            throw new IOException("prime file is truncated");
+        }
+    }
+
+    public static PrimeFile open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            return new PrimeFile(randomAccessFile);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    public long getMaxGenerated() {
+        return maxGenerated;
+    }
+
+    public long getLastPrime() {
+        return lastPrime;
+    }
+
+    @Override
+    public long size() {
+        return count;
+    }
+
+    @Override
+    public long get(long index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + count);
+        }
+        Cursor cursor = new Cursor(index / indexInterval);
+        for (long i = index % indexInterval; i > 0; --i) {
+            cursor.next();
+        }
+        return cursor.value;
+    }
+
+    @Override
+    public long rank(long value) {
+        if (count == 0) {
+            return 0;
+        }
+        long entry = entryAtOrBefore(value);
+        if (entry < 0) {
+            return 0;
+        }
+        Cursor cursor = new Cursor(entry);
+        long rank = entry * indexInterval + 1;
+        while (rank < count && cursor.peek() <= value) {
+            cursor.next();
+            ++rank;
+        }
+        return rank;
+    }
+
+    @Override
+    public boolean contains(long value) {
+        long rank = rank(value);
+        return rank > 0 && get(rank - 1) == value;
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator(final long from, final long to) {
+        long entry = Math.max(0, entryAtOrBefore(from));
+        final Cursor cursor = count == 0 ? null : new Cursor(entry);
+        final long firstIndex = entry * indexInterval;
+        return new PrimitiveIterator.OfLong() {
+            private long index = firstIndex;
+            private boolean positioned = false;
+
+            private void position() {
+                if (!positioned) {
+                    while (index < count && cursor.value < from) {
+                        advance();
+                    }
+                    positioned = true;
+                }
+            }
+
+            private void advance() {
+                if (++index < count) {
+                    cursor.next();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                position();
+                return index < count && cursor.value <= to;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long result = cursor.value;
+                advance();
+                return result;
+            }
+        };
+    }
+
+    /**
+     * @return the last index entry whose prime is smaller than or equal to value, -1 if there is none
+     */
+    private long entryAtOrBefore(long value) {
+        long low = 0;
+        long high = indexEntries;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (getLong(indexOffset + middle * 16) <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    private byte getByte(long position) {
+        return regions[(int) (position >>> REGION_BITS)].get((int) (position & REGION_MASK));
+    }
+
+    private long getLong(long position) {
+        long result = 0;
+        for (int i = 0; i < 8; ++i) {
+            result = (result << 8) | (getByte(position + i) & 0xFF);
+        }
+        return result;
+    }
+
+    static void putLong(byte[] target, int offset, long value) {
+        for (int i = 7; i >= 0; --i) {
+            target[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private class Cursor {
+        private long value;
+        private long position;
+
+        private Cursor(long entry) {
+            value = getLong(indexOffset + entry * 16);
+            position = getLong(indexOffset + entry * 16 + 8);
+        }
+
+        private long readVarint() {
+            long result = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = getByte(position++);
+                result |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return result;
+        }
+
+        private long peek() {
+            long saved = position;
+            long next = value + (readVarint() << 1);
+            position = saved;
+            return next;
+        }
+
+        private void next() {
+            value += readVarint() << 1;
+        }
+    }
+}
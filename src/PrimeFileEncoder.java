@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/**
+ * Encodes ascending odd primes into the binary format read by {@link PrimeFile}: the first prime of the file as is,
+ * every other one as half the gap to its predecessor, both as varints, and every indexInterval-th prime with the
+ * offset of the varint following it in the sparse index. Also builds the header and the index.
+ * <p>
+ * <p>The encoded bytes are taken out by the writer, which calls {@link #clearBytes} after writing them. Parts of
+ * a file can be encoded on their own and taken in with {@link #append}.</p>
+ */
+public class PrimeFileEncoder {
+    static final int MAX_VARINT_BYTES = 10;
+
+    private final int indexInterval;
+    //primes of the file encoded so far, the last of them and the file offset of the first byte held
+    private long count;
+    private long lastPrime;
+    private long position;
+    private byte[] bytes;
+    private int length = 0;
+    //pairs of prime and file offset
+    private long[] index = new long[64];
+    private int indexSize = 0;
+
+    /**
+     * Starts a file.
+     */
+    public PrimeFileEncoder(int indexInterval, int capacity) {
+        this(indexInterval, 0, 0, PrimeFile.HEADER_SIZE, capacity);
+    }
+
+    /**
+     * Starts a part of a file, after count primes of which lastPrime is the last. Offsets are counted from the
+     * start of the part.
+     */
+    public PrimeFileEncoder(int indexInterval, long count, long lastPrime, int capacity) {
+        this(indexInterval, count, lastPrime, 0, capacity);
+    }
+
+    private PrimeFileEncoder(int indexInterval, long count, long lastPrime, long position, int capacity) {
+        this.indexInterval = indexInterval;
+        this.count = count;
+        this.lastPrime = lastPrime;
+        this.position = position;
+        this.bytes = new byte[Math.max(capacity, MAX_VARINT_BYTES)];
+    }
+
+    public void add(long prime) {
+        if (prime <= lastPrime || prime % 2 == 0) {
+            throw new IllegalArgumentException("primes must be odd and ascending: " + prime);
+        }
+        if (length + MAX_VARINT_BYTES > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + MAX_VARINT_BYTES));
+        }
+        long value = count == 0 ? prime : (prime - lastPrime) >>> 1;
+        while ((value & ~0x7FL) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+        if (count % indexInterval == 0) {
+            addIndexEntry(prime, position + length);
+        }
+        lastPrime = prime;
+        ++count;
+    }
+
+    private void addIndexEntry(long prime, long offset) {
+        if (indexSize + 2 > index.length) {
+            index = Arrays.copyOf(index, index.length * 2);
+        }
+        index[indexSize++] = prime;
+        index[indexSize++] = offset;
+    }
+
+    /**
+     * Takes in a part encoded on its own that continues this one and still holds all of its bytes. They are written
+     * right after the bytes of this encoder.
+     */
+    public void append(PrimeFileEncoder part) {
+        long partPosition = position + length;
+        for (int i = 0; i < part.indexSize; i += 2) {
+            addIndexEntry(part.index[i], partPosition + part.index[i + 1]);
+        }
+        count = part.count;
+        lastPrime = part.lastPrime;
+        position += part.length;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Forgets the bytes held, they were written.
+     */
+    public void clearBytes() {
+        position += length;
+        length = 0;
+    }
+
+    /**
+     * @return the index, written after the last byte of the primes
+     */
+    public byte[] encodeIndex() {
+        byte[] encoded = new byte[indexSize * 8];
+        for (int i = 0; i < indexSize; ++i) {
+            PrimeFile.putLong(encoded, i * 8, index[i]);
+        }
+        return encoded;
+    }
+
+    /**
+     * @return the header, once every byte of the primes is written
+     */
+    public byte[] encodeHeader(long maxGenerated) {
+        byte[] header = new byte[PrimeFile.HEADER_SIZE];
+        PrimeFile.putLong(header, 0, PrimeFile.MAGIC);
+        PrimeFile.putLong(header, 8, PrimeFile.VERSION);
+        PrimeFile.putLong(header, 16, maxGenerated);
+        PrimeFile.putLong(header, 24, count);
+        PrimeFile.putLong(header, 32, lastPrime);
+        PrimeFile.putLong(header, 40, indexInterval);
+        PrimeFile.putLong(header, 48, position + length);
+        PrimeFile.putLong(header, 56, indexSize / 2);
+        return header;
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.PrimitiveIterator;
+
+/**
+ * Streams ascending odd primes into the binary format read by {@link PrimeFile}.
+ */
+public class PrimeFileWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final OutputStream out;
+    private final PrimeFileEncoder encoder;
+    private boolean finished = false;
+
+    public PrimeFileWriter(File file) throws IOException {
+        this(file, PrimeFile.DEFAULT_INDEX_INTERVAL);
+    }
+
+    public PrimeFileWriter(File file, int indexInterval) throws IOException {
+        this.file = file;
+        this.encoder = new PrimeFileEncoder(indexInterval, BUFFER_SIZE);
+        this.out = new FileOutputStream(file);
+        out.write(new byte[PrimeFile.HEADER_SIZE]);
+    }
+
+    public void add(long prime) throws IOException {
+        encoder.add(prime);
+        if (encoder.getLength() + PrimeFileEncoder.MAX_VARINT_BYTES > BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    public void addAll(PrimeSource primes) throws IOException {
+        PrimitiveIterator.OfLong iterator = primes.iterator(0, Long.MAX_VALUE);
+        while (iterator.hasNext()) {
+            add(iterator.nextLong());
+        }
+    }
+
+    private void flush() throws IOException {
+        out.write(encoder.getBytes(), 0, encoder.getLength());
+        encoder.clearBytes();
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    static int writeVarint(OutputStream out, long value) throws IOException {
+        int written = 1;
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+            ++written;
+        }
+        out.write((int) value);
+        return written;
+    }
+
+    /**
+     * Writes the index and the header and forces the file to disk, the file is only valid after this call.
+     */
+    public void finish(long maxGenerated) throws IOException {
+        flush();
+        out.write(encoder.encodeIndex());
+        out.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(encoder.encodeHeader(maxGenerated));
+            raf.getChannel().force(true);
+        }
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            out.close();
+        }
+    }
+}
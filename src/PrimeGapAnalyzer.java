@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Counts the gaps between consecutive primes and the twin, cousin and sexy pairs, see {@link PrimeGapStats}.
+ * Primes past the long range are left out.
+ */
+public class PrimeGapAnalyzer implements PrimeAnalyzer<PrimeGapStats> {
+    public static final String NAME = "gaps";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public PrimeGapStats summarise(PrimeBatch batch) {
+        return PrimeGapStats.of(batch.getPrimes(), batch.getCount());
+    }
+
+    @Override
+    public PrimeGapStats merge(PrimeGapStats earlier, PrimeGapStats later) {
+        return earlier.merge(later);
+    }
+
+    @Override
+    public void store(PrimeGapStats summary, Properties properties) {
+        properties.setProperty("count", Long.toString(summary.getCount()));
+        properties.setProperty("first", join(summary.getFirst()));
+        properties.setProperty("last", join(summary.getLast()));
+        properties.setProperty("twins", Long.toString(summary.getTwins()));
+        properties.setProperty("cousins", Long.toString(summary.getCousins()));
+        properties.setProperty("sexy", Long.toString(summary.getSexy()));
+        properties.setProperty("maxGap", Long.toString(summary.getMaxGap()));
+        properties.setProperty("maxGapStart", Long.toString(summary.getMaxGapStart()));
+        long[] gaps = summary.getGaps();
+        for (int i = 1; i < gaps.length; ++i) {
+            if (gaps[i] != 0) {
+                properties.setProperty("gap." + 2 * i, Long.toString(gaps[i]));
+            }
+        }
+    }
+
+    @Override
+    public PrimeGapStats load(Properties properties) {
+        long[] gaps = new long[32];
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("gap.")) {
+                int index = Integer.parseInt(key.substring(4)) / 2;
+                if (index >= gaps.length) {
+                    gaps = Arrays.copyOf(gaps, Math.max(gaps.length * 2, index + 1));
+                }
+                gaps[index] = Long.parseLong(properties.getProperty(key));
+            }
+        }
+        return new PrimeGapStats(getLong(properties, "count"), split(properties.getProperty("first")),
+                split(properties.getProperty("last")), gaps, getLong(properties, "maxGap"),
+                getLong(properties, "maxGapStart"), getLong(properties, "twins"), getLong(properties, "cousins"),
+                getLong(properties, "sexy"));
+    }
+
+    private static long getLong(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("no " + key + " in the saved statistics");
+        }
+        return Long.parseLong(value);
+    }
+
+    private static String join(long[] values) {
+        StringBuilder builder = new StringBuilder();
+        for (long value : values) {
+            builder.append(builder.length() == 0 ? "" : ",").append(value);
+        }
+        return builder.toString();
+    }
+
+    private static long[] split(String value) {
+        if (value == null || value.isEmpty()) {
+            return new long[0];
+        }
+        return Arrays.stream(value.split(",")).mapToLong(Long::parseLong).toArray();
+    }
+}
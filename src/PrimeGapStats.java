@@ -0,0 +1,182 @@
+import java.util.Arrays;
+
+/**
+ * Gaps between consecutive odd primes and the pairs of primes 2, 4 and 6 apart (twin, cousin and sexy primes),
+ * over the primes of one or more consecutive ranges. The first and last few primes are kept, so the gaps and
+ * pairs across the border of two ranges are counted when they are merged.
+ */
+public class PrimeGapStats {
+    //primes at most 6 apart have at most 2 primes in between
+    private static final int BORDER = 3;
+    private static final PrimeGapStats EMPTY = new PrimeGapStats(0, new long[0], new long[0], new long[0], 0, 0, 0, 0, 0);
+
+    private final long count;
+    private final long[] first;
+    private final long[] last;
+    //the number of gaps of each size, indexed by half the gap
+    private final long[] gaps;
+    private final long maxGap;
+    private final long maxGapStart;
+    private final long twins;
+    private final long cousins;
+    private final long sexy;
+
+    PrimeGapStats(long count, long[] first, long[] last, long[] gaps, long maxGap, long maxGapStart,
+                  long twins, long cousins, long sexy) {
+        this.count = count;
+        this.first = first;
+        this.last = last;
+        this.gaps = gaps;
+        this.maxGap = maxGap;
+        this.maxGapStart = maxGapStart;
+        this.twins = twins;
+        this.cousins = cousins;
+        this.sexy = sexy;
+    }
+
+    public static PrimeGapStats empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param primes ascending odd primes, only the first count are looked at
+     */
+    public static PrimeGapStats of(long[] primes, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        long[] gaps = new long[32];
+        long maxGap = 0;
+        long maxGapStart = 0;
+        long[] pairs = new long[4];
+        for (int i = 1; i < count; ++i) {
+            long gap = primes[i] - primes[i - 1];
+            int index = (int) (gap >>> 1);
+            if (index >= gaps.length) {
+                gaps = Arrays.copyOf(gaps, Math.max(gaps.length * 2, index + 1));
+            }
+            ++gaps[index];
+            if (gap > maxGap) {
+                maxGap = gap;
+                maxGapStart = primes[i - 1];
+            }
+            for (int j = i - 1; j >= 0 && primes[i] - primes[j] <= 6; --j) {
+                ++pairs[(int) ((primes[i] - primes[j]) >>> 1)];
+            }
+        }
+        return new PrimeGapStats(count, Arrays.copyOf(primes, Math.min(BORDER, count)),
+                Arrays.copyOfRange(primes, Math.max(0, count - BORDER), count), gaps, maxGap, maxGapStart,
+                pairs[1], pairs[2], pairs[3]);
+    }
+
+    /**
+     * @param later the statistics of the primes directly following these
+     */
+    public PrimeGapStats merge(PrimeGapStats later) {
+        if (later.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            return later;
+        }
+        long[] merged = Arrays.copyOf(gaps, Math.max(gaps.length, later.gaps.length));
+        for (int i = 0; i < later.gaps.length; ++i) {
+            merged[i] += later.gaps[i];
+        }
+        long mergedMaxGap = maxGap;
+        long mergedMaxGapStart = maxGapStart;
+        //the earliest of equal gaps is kept, like the records of maximal gaps
+        long borderGap = later.first[0] - last[last.length - 1];
+        int borderIndex = (int) (borderGap >>> 1);
+        if (borderIndex >= merged.length) {
+            merged = Arrays.copyOf(merged, borderIndex + 1);
+        }
+        ++merged[borderIndex];
+        if (borderGap > mergedMaxGap) {
+            mergedMaxGap = borderGap;
+            mergedMaxGapStart = last[last.length - 1];
+        }
+        if (later.maxGap > mergedMaxGap) {
+            mergedMaxGap = later.maxGap;
+            mergedMaxGapStart = later.maxGapStart;
+        }
+        long[] pairs = new long[4];
+        for (long earlier : last) {
+            for (long next : later.first) {
+                if (next - earlier <= 6) {
+                    ++pairs[(int) ((next - earlier) >>> 1)];
+                }
+            }
+        }
+        return new PrimeGapStats(count + later.count, border(first, later.first, true),
+                border(last, later.last, false), merged, mergedMaxGap, mergedMaxGapStart,
+                twins + later.twins + pairs[1], cousins + later.cousins + pairs[2], sexy + later.sexy + pairs[3]);
+    }
+
+    /**
+     * @return the first or last {@link #BORDER} primes of both together
+     */
+    private static long[] border(long[] earlier, long[] later, boolean first) {
+        long[] both = new long[earlier.length + later.length];
+        System.arraycopy(earlier, 0, both, 0, earlier.length);
+        System.arraycopy(later, 0, both, earlier.length, later.length);
+        int length = Math.min(BORDER, both.length);
+        return first ? Arrays.copyOf(both, length) : Arrays.copyOfRange(both, both.length - length, both.length);
+    }
+
+    /**
+     * @return the number of primes covered
+     */
+    public long getCount() {
+        return count;
+    }
+
+    long[] getFirst() {
+        return first.clone();
+    }
+
+    long[] getLast() {
+        return last.clone();
+    }
+
+    /**
+     * @return the number of consecutive primes exactly gap apart
+     */
+    public long getGapCount(long gap) {
+        int index = (int) (gap >>> 1);
+        return gap % 2 != 0 || index >= gaps.length ? 0 : gaps[index];
+    }
+
+    long[] getGaps() {
+        return gaps.clone();
+    }
+
+    public long getMaxGap() {
+        return maxGap;
+    }
+
+    /**
+     * @return the prime the first maximal gap starts at
+     */
+    public long getMaxGapStart() {
+        return maxGapStart;
+    }
+
+    public long getTwins() {
+        return twins;
+    }
+
+    public long getCousins() {
+        return cousins;
+    }
+
+    public long getSexy() {
+        return sexy;
+    }
+
+    @Override
+    public String toString() {
+        return "odd primes: " + count + ", twin pairs: " + twins + ", cousin pairs: " + cousins
+                + ", sexy pairs: " + sexy + ", max gap: " + maxGap + " after " + maxGapStart;
+    }
+}
@@ -1,72 +1,283 @@
 import java.math.BigDecimal;
-import java.math.MathContext;
-import java.util.Set;
-import java.util.TreeSet;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+public class PrimeGenerator implements RangeGenerator {
+    public static final String ENGINE_NAME = "trial division";
+    //cancelling is checked once per this many numbers
+    static final long SEGMENT_SPAN = 1 << 16;
+    //a primality test per candidate takes far longer than a few divisions, so cancelling is checked more often
+    static final long TEST_SEGMENT_SPAN = 1 << 12;
+    //the largest number whose square fits in a long
+    private static final long LARGEST_ROOT = 3037000499L;
 
-public class PrimeGenerator {
     private BigDecimal from;
-    private BigDecimal current;
     private BigDecimal to;
     volatile private GeneratorState state = GeneratorState.READY;
+    private volatile boolean cancelled = false;
 
-    private Set<BigDecimal> primes = new TreeSet<>();
-    private Set<BigDecimal> oldPrimes;
+    //primes inside the long range, the few beyond it are kept as BigInteger
+    private long[] primes = new long[64];
+    private int numberOfPrimes = 0;
+    private List<BigInteger> largePrimes = new ArrayList<>();
+    private PrimeSource oldPrimes;
+    private PrimalityTest primalityTest;
+    private Wheel wheel;
+    private long candidatesTested = 0;
     private long startTime;
     private long endTime;
 
-    private final BigDecimal TO_ADD = new BigDecimal(2);
+    private final BigDecimal TWO = new BigDecimal(2);
+
+    public PrimeGenerator(BigDecimal from, BigDecimal to, PrimeSource oldPrimes) {
+        this(from, to, oldPrimes, Wheel.DEFAULT);
+    }
 
-    public PrimeGenerator(BigDecimal from, BigDecimal to, Set<BigDecimal> oldPrimes) {
-        if (from.remainder(TO_ADD).equals(new BigDecimal(0))) {
+    public PrimeGenerator(BigDecimal from, BigDecimal to, PrimeSource oldPrimes, Wheel wheel) {
+        if (from.remainder(TWO).equals(new BigDecimal(0))) {
             from = from.add(BigDecimal.ONE);
         }
         this.from = from;
-        this.current = from;
         this.to = to;
         this.oldPrimes = oldPrimes;
+        this.wheel = wheel;
+    }
+
+    /**
+     * Tests every candidate on its own instead of dividing by the stored primes, so the range can lie anywhere
+     * regardless of how far generation got. Worth it for high, sparse ranges.
+     */
+    public PrimeGenerator(BigDecimal from, BigDecimal to, PrimalityTest primalityTest) {
+        this(from, to, primalityTest, Wheel.DEFAULT);
+    }
+
+    public PrimeGenerator(BigDecimal from, BigDecimal to, PrimalityTest primalityTest, Wheel wheel) {
+        this(from, to, (PrimeSource) null, wheel);
+        this.primalityTest = primalityTest;
     }
 
     public void generate() {
         state = GeneratorState.WORKING;
         startTime = System.nanoTime();
-        while (current.compareTo(this.to) <= 0) {
-            BigDecimal nextPotentialPrimeSqrt = BigDecimalMath
-                    .sqrt(current, MathContext.UNLIMITED);
-            boolean isPrime = true;//everything has a chance to be a prime!
-            for (BigDecimal prime : oldPrimes) {
-                if (prime.compareTo(nextPotentialPrimeSqrt) > 0) {
-                    break;
-                } else if (current
-                        .remainder(prime)
-                        .compareTo(BigDecimal.ZERO) == 0) {
-                    isPrime = false;
-                    break;
-                }
+        //the wheel steps over its own base primes, so those are added up front
+        for (long basePrime : wheel.getBasePrimes()) {
+            BigDecimal prime = BigDecimal.valueOf(basePrime);
+            if (basePrime != 2 && prime.compareTo(from) >= 0 && prime.compareTo(to) <= 0) {
+                addPrime(basePrime);
             }
-            if (isPrime) {
-                primes.add(current);
-            }
-            current = current.add(TO_ADD);
+        }
+        //candidates stay on the long path as long as stepping the wheel past the range end can't overflow
+        BigDecimal longLimit = BigDecimal.valueOf(Long.MAX_VALUE - wheel.getModulus());
+        BigInteger first = from.max(BigDecimal.ONE).toBigIntegerExact();
+        BigInteger last = to.toBigIntegerExact();
+        long[] divisors = primalityTest == null ? getDivisors() : null;
+        if (from.compareTo(longLimit) <= 0 && to.compareTo(BigDecimal.ONE) >= 0) {
+            generateLong(first.longValueExact(), to.min(longLimit).longValueExact(), divisors);
+        }
+        if (to.compareTo(longLimit) > 0) {
+            generateBig(first.max(longLimit.toBigIntegerExact().add(BigInteger.ONE)), last, divisors);
         }
         endTime = System.nanoTime();
         state = GeneratorState.DONE;
     }
 
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * The divisors for the whole range, read from storage once.
+     */
+    private long[] getDivisors() {
+        //candidates share no factor with the base primes, so dividing by them is pointless
+        long firstDivisor = wheel.getLargestBasePrime() + 1;
+        //no divisor past the root of the range end is ever needed, so storage past it is never read
+        BigDecimal root = BigDecimalMath.integerSqrt(to.max(BigDecimal.ONE));
+        long lastDivisor = root.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) < 0 ? root.longValue() + 1 : Long.MAX_VALUE;
+        long[] divisors = new long[64];
+        int count = 0;
+        PrimitiveIterator.OfLong iterator = oldPrimes.iterator(firstDivisor, lastDivisor);
+        while (iterator.hasNext()) {
+            if (count == divisors.length) {
+                divisors = Arrays.copyOf(divisors, count * 2);
+            }
+            divisors[count++] = iterator.nextLong();
+        }
+        return Arrays.copyOf(divisors, count);
+    }
+
+    private void generateLong(long first, long last, long[] divisors) {
+        int wheelIndex = wheel.firstIndex(first);
+        long candidate = wheel.firstCandidate(first);
+        if (candidate == 1) {
+            candidate += wheel.getGap(wheelIndex);
+            wheelIndex = wheel.nextIndex(wheelIndex);
+        }
+        long span = divisors == null ? TEST_SEGMENT_SPAN : SEGMENT_SPAN;
+        //only the divisors whose square is at most the candidate are tried, the bound moves up as the candidates
+        //pass the square of the next divisor, so no root is ever taken
+        int divisorCount = 0;
+        long nextSquare = divisors == null ? Long.MAX_VALUE : getSquare(divisors, 0);
+        while (candidate <= last) {
+            if (cancelled) {
+                //candidate itself wasn't tested, the range ends at the odd number before it like the sieve's
+                to = BigDecimal.valueOf(candidate - 2);
+                return;
+            }
+            long segmentEnd = last - candidate <= span ? last : candidate + span;
+            for (; candidate <= segmentEnd; candidate += wheel.getGap(wheelIndex),
+                    wheelIndex = wheel.nextIndex(wheelIndex)) {
+                ++candidatesTested;
+                if (divisors == null) {
+                    if (primalityTest.isPrime(candidate)) {
+                        addPrime(candidate);
+                    }
+                    continue;
+                }
+                while (candidate >= nextSquare) {
+                    nextSquare = getSquare(divisors, ++divisorCount);
+                }
+                if (isPrime(candidate, divisors, divisorCount)) {
+                    addPrime(candidate);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the square of the divisor at index, Long.MAX_VALUE when there is none or it doesn't fit
+     */
+    private static long getSquare(long[] divisors, int index) {
+        if (index >= divisors.length || divisors[index] > LARGEST_ROOT) {
+            return Long.MAX_VALUE;
+        }
+        return divisors[index] * divisors[index];
+    }
+
+    private static boolean isPrime(long candidate, long[] divisors, int divisorCount) {
+        for (int i = 0; i < divisorCount; ++i) {
+            if (candidate % divisors[i] == 0) {
+                return false;
+            }
+        }
+        return true;//everything has a chance to be a prime!
+    }
+
+    /**
+     * Beyond the long range every candidate of a segment is its first candidate plus an offset that fits in a long.
+     * The remainders of that first candidate are taken once per segment, those of the others follow from them,
+     * so dividing needs no BigInteger arithmetic per candidate.
+     */
+    private void generateBig(BigInteger first, BigInteger last, long[] divisors) {
+        int wheelIndex = wheel.firstIndex(first);
+        BigInteger candidate = wheel.firstCandidate(first);
+        long span = divisors == null ? TEST_SEGMENT_SPAN : SEGMENT_SPAN;
+        long[] remainders = divisors == null ? null : new long[divisors.length];
+        while (candidate.compareTo(last) <= 0) {
+            if (cancelled) {
+                to = new BigDecimal(candidate.subtract(BigInteger.TWO));
+                return;
+            }
+            BigInteger segmentStart = candidate;
+            long segmentSpan = last.subtract(segmentStart).min(BigInteger.valueOf(span)).longValue();
+            int divisorCount = 0;
+            if (divisors != null) {
+                //this high the root barely moves over a segment, one bound serves all of its candidates
+                BigInteger root = segmentStart.add(BigInteger.valueOf(segmentSpan)).sqrt();
+                divisorCount = root.bitLength() < 63 ? countUpTo(divisors, root.longValue()) : divisors.length;
+                for (int i = 0; i < divisorCount; ++i) {
+                    remainders[i] = segmentStart.mod(BigInteger.valueOf(divisors[i])).longValue();
+                }
+            }
+            long offset = 0;
+            for (; offset <= segmentSpan; offset += wheel.getGap(wheelIndex), wheelIndex = wheel.nextIndex(wheelIndex)) {
+                ++candidatesTested;
+                if (divisors == null ? primalityTest.isPrime(segmentStart.add(BigInteger.valueOf(offset)))
+                        : isPrime(offset, remainders, divisors, divisorCount)) {
+                    addPrime(segmentStart.add(BigInteger.valueOf(offset)));
+                }
+            }
+            candidate = segmentStart.add(BigInteger.valueOf(offset));
+        }
+    }
+
+    /**
+     * @param remainders of the first candidate of the segment, the candidate lies offset past it
+     */
+    private static boolean isPrime(long offset, long[] remainders, long[] divisors, int divisorCount) {
+        for (int i = 0; i < divisorCount; ++i) {
+            if ((remainders[i] + offset) % divisors[i] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of divisors at or below bound
+     */
+    private static int countUpTo(long[] divisors, long bound) {
+        int position = Arrays.binarySearch(divisors, bound);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private void addPrime(long prime) {
+        if (numberOfPrimes == primes.length) {
+            primes = Arrays.copyOf(primes, numberOfPrimes * 2);
+        }
+        primes[numberOfPrimes++] = prime;
+    }
+
+    private void addPrime(BigInteger prime) {
+        if (prime.bitLength() < 64) {
+            addPrime(prime.longValue());
+        } else {
+            largePrimes.add(prime);
+        }
+    }
+
+    public String getEngine() {
+        return primalityTest == null ? ENGINE_NAME : primalityTest.getName();
+    }
+
+    public Wheel getWheel() {
+        return wheel;
+    }
+
+    /**
+     * @return the number of candidates the wheel left to be tested, only known after generating
+     */
+    public long getCandidatesTested() {
+        return candidatesTested;
+    }
+
     public GeneratorState getGeneratorState() {
         return state;
     }
 
-    public Set<BigDecimal> getPrimes() {
+    public void addPrimesTo(PrimeList primeList) {
+        primeList.addAll(getBatch());
+    }
+
+    public PrimeBatch getBatch() {
         if (!GeneratorState.DONE.equals(getGeneratorState())) {
             throw new IllegalStateException("not done generating");
         }
-        return primes;
+        List<BigDecimal> decimalPrimes = new ArrayList<>(largePrimes.size());
+        for (BigInteger prime : largePrimes) {
+            decimalPrimes.add(new BigDecimal(prime));
+        }
+        return new PrimeBatch(from, to, primes, numberOfPrimes, decimalPrimes);
     }
 
     public PrimeGeneratorTiming getTimings() {
         if (!GeneratorState.DONE.equals(getGeneratorState())) {
             throw new IllegalStateException("not done generating");
         }
-        return new PrimeGeneratorTiming(endTime - startTime, from, to, primes.size());
+        return new PrimeGeneratorTiming(getEngine(), endTime - startTime, from, to,
+                numberOfPrimes + largePrimes.size());
     }
 }
@@ -1,136 +1,590 @@
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PrimeGeneratorController {
+    private static final BigDecimal SIEVE_LIMIT = BigDecimal.valueOf(SegmentedSieveGenerator.MAX_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+    //ranges queued per thread, so a thread that finishes early always finds more work
+    private static final int RANGES_AHEAD_PER_CORE = 4;
+    //only the most recent timings are kept, long runs commit millions of ranges
+    private static final int TIMINGS_KEPT = 10000;
+    //committed ranges a sink may fall behind before committing waits for it
+    private static final int PIPELINE_BUFFER = 64;
+    //how often the run policy is looked at while waiting for a range
+    private static final long POLICY_POLL_MILLIS = 50;
+
     private final int cores;
 
     private BigDecimal maxCalculationsPerCore;
     private BigDecimal minCalculationsPerCore;
-    private PrimeResult calculatedPrimes;
+    private volatile PrimeResult calculatedPrimes;
+    private PrimeLog primeLog = null;
+    private volatile RangeScheduler scheduler = null;
+    private PrimalityTest primalityTest = MillerRabinTest.INSTANCE;
+    private volatile Wheel wheel = Wheel.DEFAULT;
+    private volatile SieveKernel sieveKernel = PatternSieveKernel.INSTANCE;
+    private volatile int segmentBytes = SegmentedSieveGenerator.DEFAULT_SEGMENT_BYTES;
+    private AutoTuner autoTuner = null;
+    //only set while auto-tuning, which changes how many of the pool's threads generate at once
+    private volatile ThreadLimit threadLimit = null;
+    private PrimeMetrics metrics = new PrimeMetrics();
+    private final List<PrimeSink> sinks = new ArrayList<>();
+    private SubmissionPublisher<PrimeBatch> publisher = null;
+    private long retentionLimit = Long.MAX_VALUE;
+    private boolean virtualThreads = false;
+    private RunPolicy runPolicy = null;
+    private final List<PrimeAnalytics<?>> analytics = new ArrayList<>();
 
     private volatile boolean running = false;
+    private volatile boolean started = false;
+    //shared with stopGenerating, which cancels whatever is still being generated
+    private final Deque<ScheduledRange> inFlight = new ConcurrentLinkedDeque<>();
 
-    private final AtomicReferenceArray<PrimeGenerator> generatorsCurrentBatch;
-    private final Collection<PrimeGeneratorTiming> timings = new ArrayList<>();
-    private CountDownLatch latch = null;
-    private CountDownLatch stopLatch = null;
+    private final TimingRingBuffer timings = new TimingRingBuffer(TIMINGS_KEPT);
+    private long[] sievingPrimes = new long[0];
+    private long sievingPrimesBound = 0;
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private volatile Throwable failure = null;
 
     public PrimeGeneratorController(PrimeResult calculatedPrimes) {
-        this.cores = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this(calculatedPrimes, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public PrimeGeneratorController(PrimeResult calculatedPrimes, int cores) {
+        this.cores = cores;
         System.out.println(this.cores + " thread" + (this.cores == 1 ? "" : "s") + " will be used.");
-        PrimeGenerator[] generators = new PrimeGenerator[cores];
-        for (int i = 0; i < cores; ++i) {
-            generators[i] = null;
-        }
-        generatorsCurrentBatch = new AtomicReferenceArray<>(generators);
 
         this.calculatedPrimes = calculatedPrimes;
-        this.maxCalculationsPerCore = new BigDecimal(20000);
+        this.maxCalculationsPerCore = new BigDecimal(1 << 24);
         this.minCalculationsPerCore = new BigDecimal(5000);
     }
 
+    /**
+     * Generates until stopped or until the run policy is met, then drains the pipeline. A failure is thrown here
+     * and passed on to {@link #awaitCompletion}.
+     */
     public void startGenerating() {
-        final ExecutorService executorService = Executors.newFixedThreadPool(this.cores);
+        try {
+            generate();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            completed.countDown();
+        }
+    }
+
+    private void generate() {
+        final ExecutorService pool = createExecutor();
+        calculatedPrimes.getAllPrimes().setRetentionLimit(retentionLimit);
+        List<PrimeSink> pipeline = new ArrayList<>(sinks);
+        if (primeLog != null) {
+            pipeline.add(0, new PrimeLogSink(primeLog, metrics));
+        }
+        //sinks get threads of their own, the common pool may be as small as a single thread
+        ExecutorService sinkExecutor = Executors.newFixedThreadPool(Math.max(1, pipeline.size()));
+        publisher = new SubmissionPublisher<>(sinkExecutor, PIPELINE_BUFFER);
+        for (PrimeSink sink : pipeline) {
+            publisher.subscribe(sink);
+        }
+        scheduler = new RangeScheduler(calculatedPrimes.getMaxGenerated().add(new BigDecimal(2)),
+                minCalculationsPerCore, maxCalculationsPerCore);
+        scheduler.setWheel(wheel);
+        metrics.setGeneratingThreads(cores);
+        if (autoTuner != null) {
+            threadLimit = new ThreadLimit(Math.min(cores, autoTuner.getThreads()));
+            metrics.setGeneratingThreads(threadLimit.getLimit());
+        }
+        metrics.setResultHeapBytes(() -> calculatedPrimes.getAllPrimes().estimateHeapBytes());
+        metrics.setMaxGenerated(() -> calculatedPrimes.getMaxGenerated().min(LONG_MAX).longValue());
+        if (calculatedPrimes.getAllPrimes().getBase() instanceof PrimeSegmentStore) {
+            metrics.setSegmentStore((PrimeSegmentStore) calculatedPrimes.getAllPrimes().getBase());
+        }
+        if (runPolicy != null) {
+            runPolicy.start();
+            metrics.setTargetRemainingNanos(this::getProjectedRemainingNanos);
+        }
         running = true;
-        while (running) {
-            latch = new CountDownLatch(1);
-            Set<BigDecimal> previouslyGeneratedPrimes = calculatedPrimes.getAllPrimes();
-            BigDecimal lowestPotentialPrime = calculatedPrimes
-                    .getMaxGenerated()
-                    .add(new BigDecimal(2));
-            BigDecimal maxCalculatablePrime = BigDecimalMath
-                    .min(calculatedPrimes
-                                    .getMaxGenerated()
-                                    .pow(2),
-                            lowestPotentialPrime
-                                    .add(maxCalculationsPerCore
-                                            .multiply(new BigDecimal(cores))));
-
-            int coresToUse;
-            BigDecimal sizePerCore = null;
-            for (coresToUse = cores; coresToUse > 0; --coresToUse) {
-                sizePerCore = maxCalculatablePrime
-                        .subtract(lowestPotentialPrime)
-                        .divide(new BigDecimal(coresToUse), BigDecimal.ROUND_FLOOR);
-                if (sizePerCore.compareTo(minCalculationsPerCore) > 0) {
+        started = true;
+        PrimeSink failedSink;
+        try {
+            failedSink = generateRanges(pool, pipeline);
+        } catch (RuntimeException | Error e) {
+            cancelRanges();
+            pool.shutdown();
+            publisher.closeExceptionally(e);
+            sinkExecutor.shutdown();
+            throw e;
+        }
+        pool.shutdown();
+        publisher.close();
+        try {
+            for (PrimeSink sink : pipeline) {
+                sink.awaitCompletion();
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("interrupted while draining the pipeline", e);
+        } finally {
+            sinkExecutor.shutdown();
+        }
+        if (failedSink != null) {
+            throw new IllegalStateException(failedSink.getClass().getSimpleName() + " failed", failedSink.getError());
+        }
+    }
+
+    /**
+     * Schedules and commits ranges until the run ends.
+     *
+     * @return the durable sink whose failure ended the run, null when it ended otherwise
+     */
+    private PrimeSink generateRanges(ExecutorService pool, List<PrimeSink> pipeline) {
+        PrimeSink failedSink = null;
+        while (running || !inFlight.isEmpty()) {
+            checkRunPolicy();
+            if (running) {
+                schedule(pool);
+            }
+            ScheduledRange head = inFlight.pollFirst();
+            if (head == null) {
+                if (!running) {
                     break;
                 }
+                throw new IllegalStateException("nothing left to schedule below " + calculatedPrimes.getMaxGenerated());
             }
-            if (coresToUse < 1) {
-                coresToUse = 1;
+            long waitStart = System.nanoTime();
+            waitFor(head);
+            metrics.recordBarrierWait(System.nanoTime() - waitStart);
+            if (!commit(head)) {
+                //a range cut short by a stop leaves a gap, nothing after it can be committed
+                for (ScheduledRange range : inFlight) {
+                    range.generator.cancel();
+                }
+                inFlight.clear();
             }
-            //noinspection ConstantConditions
-            if (sizePerCore.remainder(new BigDecimal(2)).equals(BigDecimal.ONE)) {
-                sizePerCore = sizePerCore.subtract(BigDecimal.ONE);
+            if (failedSink == null) {
+                failedSink = getFailedDurableSink(pipeline);
+                if (failedSink != null) {
+                    System.out.println("stopping, " + failedSink.getClass().getSimpleName() + " failed.");
+                    cancelRanges();
+                }
             }
+        }
+        return failedSink;
+    }
 
-            BigDecimal lowest = lowestPotentialPrime;
-            BigDecimal highest = lowest.add(sizePerCore);
-            Collection<PrimeGenerator> generators = new ArrayList<>();
-            for (int i = 0; i < coresToUse; ++i) {
-                if (i != 0) {
-                    lowest = lowest.add(new BigDecimal(2));
-                    highest = lowest.add(sizePerCore);
-                }
-                PrimeGenerator generator = new PrimeGenerator(lowest, highest, previouslyGeneratedPrimes);
-                generatorsCurrentBatch.set(i, generator);
-                generators.add(generator);
+    /**
+     * @return the first durable sink that failed, the primes it gets no more of are above the retention limit and
+     * would be lost, null while they all work
+     */
+    private static PrimeSink getFailedDurableSink(List<PrimeSink> pipeline) {
+        for (PrimeSink sink : pipeline) {
+            if (sink.isDurable() && sink.getError() != null) {
+                return sink;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the range to be generated, stopping in the meantime when the run policy says so.
+     */
+    private void waitFor(ScheduledRange range) {
+        while (true) {
+            try {
+                range.future.get(POLICY_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                checkRunPolicy();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("range generation error", e);
             }
+        }
+    }
+
+    private void checkRunPolicy() {
+        if (running && runPolicy != null && runPolicy.isReached(calculatedPrimes)) {
+            cancelRanges();
+        }
+    }
+
+    /**
+     * Ranges stop at their next segment boundary, so stopping doesn't wait for whole ranges.
+     */
+    private void cancelRanges() {
+        running = false;
+        for (ScheduledRange range : inFlight) {
+            range.generator.cancel();
+        }
+    }
+
+    /**
+     * @return the size no range may pass, so the run ends on the target number and ranges don't run past the deadline
+     */
+    private BigDecimal getMaxRangeSize(String engine) {
+        BigDecimal maxRangeSize = maxCalculationsPerCore;
+        if (runPolicy == null) {
+            return maxRangeSize;
+        }
+        if (runPolicy.getUntilNumber() != null) {
+            //the last ranges are split over the cores, so they all finish around the same time
+            BigDecimal perCore = runPolicy.getUntilNumber().subtract(scheduler.getNext())
+                    .divide(BigDecimal.valueOf(cores), 0, RoundingMode.CEILING);
+            maxRangeSize = BigDecimalMath.min(maxRangeSize, perCore.max(minCalculationsPerCore));
+        }
+        double throughput = scheduler.getNumbersPerNanoSecond(engine);
+        long remainingNanos = runPolicy.getRemainingNanos();
+        if (throughput > 0 && remainingNanos != Long.MAX_VALUE) {
+            BigDecimal reachable = BigDecimal.valueOf((long) (throughput * remainingNanos));
+            maxRangeSize = BigDecimalMath.min(maxRangeSize, reachable.max(minCalculationsPerCore));
+        }
+        return maxRangeSize;
+    }
+
+    /**
+     * @return a virtual thread per range when asked for and the runtime has them, the fork-join pool otherwise
+     */
+    private ExecutorService createExecutor() {
+        if (virtualThreads) {
             try {
-                latch = new CountDownLatch(generators.size());
-                for (final PrimeGenerator runningGenerator : generators) {
-                    executorService.submit(() -> {
-                        runningGenerator.generate();
-                        generatorDone(runningGenerator);
-                    });
+                //looked up by name, so the code still builds and runs on runtimes without virtual threads
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("virtual threads need Java 21, using a pool of " + cores + " threads.");
+            }
+        }
+        //named, so the metrics and thread dumps tell the generating threads apart
+        AtomicInteger threads = new AtomicInteger();
+        return new ForkJoinPool(cores, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("prime-generator-" + threads.getAndIncrement());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Queues ranges until every thread has enough work or the verified primes can't cover the next range.
+     */
+    private void schedule(ExecutorService pool) {
+        //only primes below the committed frontier are known, they cover candidates up to its square
+        BigDecimal limit = BigDecimalMath.min(getKnownBound().pow(2), SIEVE_LIMIT);
+        BigDecimal until = runPolicy == null ? null : runPolicy.getUntilNumber();
+        while (running && inFlight.size() < cores * RANGES_AHEAD_PER_CORE) {
+            //past the sieve the candidates are tested on their own, which needs no stored primes at all
+            boolean useSieve = scheduler.getNext().compareTo(SIEVE_LIMIT) <= 0;
+            String engine = useSieve ? SegmentedSieveGenerator.ENGINE_NAME : primalityTest.getName();
+            BigDecimal rangeLimit = useSieve ? limit : scheduler.getNext().add(maxCalculationsPerCore);
+            if (until != null) {
+                rangeLimit = BigDecimalMath.min(rangeLimit, until);
+            }
+            BigDecimal[] range = scheduler.nextRange(rangeLimit, engine, getMaxRangeSize(engine));
+            if (range == null) {
+                return;
+            }
+            RangeGenerator generator = useSieve
+                    ? new SegmentedSieveGenerator(range[0].longValueExact(), range[1].longValueExact(),
+                    getSievingPrimes(range[1].longValueExact()), sieveKernel,
+                    autoTuner == null ? segmentBytes : autoTuner.nextSegmentBytes())
+                    : new PrimeGenerator(range[0], range[1], primalityTest, wheel);
+            Object[] summaries = new Object[analytics.size()];
+            final ThreadLimit limiter = threadLimit;
+            inFlight.addLast(new ScheduledRange(generator, range[1], summaries, pool.submit(() -> {
+                if (limiter != null) {
+                    limiter.acquire();
+                }
+                try {
+                    generator.generate();
+                } finally {
+                    if (limiter != null) {
+                        limiter.release();
+                    }
                 }
-                latch.await();
-            } catch (InterruptedException e) {
-                throw new IllegalStateException("latch await error");
+                metrics.recordGenerate(generator.getTimings());
+                summarise(generator.getBatch(), summaries);
+            })));
+            if (!running) {
+                //stopGenerating may have gone over the ranges before this one was added
+                generator.cancel();
             }
-            Set<BigDecimal> newPrimes = new TreeSet<>(calculatedPrimes.getAllPrimes());
-            for (PrimeGenerator currentBatch : generators) {
-                newPrimes.addAll(currentBatch.getPrimes());
-                timings.add(currentBatch.getTimings());
+        }
+    }
+
+    private void summarise(PrimeBatch batch, Object[] summaries) {
+        for (int i = 0; i < summaries.length; ++i) {
+            summaries[i] = analytics.get(i).summarise(batch);
+        }
+    }
+
+    private long[] getSievingPrimes(long to) {
+        long bound = (long) Math.sqrt((double) to) + 1;
+        if (bound > sievingPrimesBound) {
+            //fetch ahead, so the copy is only made once in a while
+            long known = getKnownBound().min(LONG_MAX).longValue();
+            sievingPrimesBound = Math.min(known, Math.max(bound, sievingPrimesBound * 2));
+            sievingPrimes = calculatedPrimes.getAllPrimes().toArray(sievingPrimesBound);
+        }
+        return sievingPrimes;
+    }
+
+    /**
+     * @return the bound up to which every prime is in memory
+     */
+    private BigDecimal getKnownBound() {
+        return calculatedPrimes.getMaxGenerated().min(BigDecimal.valueOf(retentionLimit));
+    }
+
+    /**
+     * Ranges are committed in the order they were scheduled, so the frontier only moves over contiguous results.
+     * Publishing blocks while a sink is {@link #PIPELINE_BUFFER} ranges behind.
+     *
+     * @return false when the range was cancelled before its end, only the part before that is committed
+     */
+    private boolean commit(ScheduledRange range) {
+        long commitStart = System.nanoTime();
+        PrimeList primes = calculatedPrimes.getAllPrimes();
+        PrimeBatch generated = range.generator.getBatch();
+        PrimeBatch batch = limitToRunPolicy(generated, primes);
+        boolean complete = batch.getTo().compareTo(range.to) == 0;
+        if (batch.getTo().compareTo(batch.getFrom()) < 0) {
+            return complete;
+        }
+        primes.addAll(batch);
+        PrimeGeneratorTiming timing = range.generator.getTimings();
+        timings.add(timing);
+        scheduler.record(timing);
+        if (autoTuner != null && range.generator instanceof SegmentedSieveGenerator) {
+            autoTuner.record(((SegmentedSieveGenerator) range.generator).getSegmentBytes(), timing);
+            segmentBytes = autoTuner.getSegmentBytes();
+            int threads = Math.min(cores, autoTuner.recordProgress(batch.getTo(), System.nanoTime()));
+            if (threads != threadLimit.getLimit()) {
+                threadLimit.setLimit(threads);
+                metrics.setGeneratingThreads(threads);
             }
-            calculatedPrimes = new PrimeResult(maxCalculatablePrime, newPrimes);
         }
-        executorService.shutdown();
-        stopLatch.countDown();
+        calculatedPrimes = new PrimeResult(batch.getTo(), primes);
+        if (batch != generated) {
+            //the summaries were made of the whole range, only part of it is committed
+            summarise(batch, range.summaries);
+        }
+        for (int i = 0; i < range.summaries.length; ++i) {
+            analytics.get(i).add(range.summaries[i], batch.getTo());
+        }
+        metrics.recordCommit(timing, System.nanoTime() - commitStart);
+        publisher.submit(batch);
+        return complete;
     }
 
-    private void generatorDone(PrimeGenerator generator) {
-        if (!GeneratorState.DONE.equals(generator.getGeneratorState())) {
-            throw new IllegalStateException("generator not done, but generatorDone called.");
+    /**
+     * @return the batch cut off at the last prime the run policy allows, the batch itself when it all fits
+     */
+    private PrimeBatch limitToRunPolicy(PrimeBatch batch, PrimeList primes) {
+        if (runPolicy == null) {
+            return batch;
         }
-        latch.countDown();
+        long allowed = Math.min(batch.size(), runPolicy.getPrimesAllowed(primes));
+        if (!runPolicy.fitsHeap(primes, batch.getCount())) {
+            //only the primes under the retention limit stay in memory
+            long[] longPrimes = batch.getPrimes();
+            long kept = 0;
+            for (int i = 0; i < allowed && i < batch.getCount(); ++i) {
+                if (longPrimes[i] <= retentionLimit && !runPolicy.fitsHeap(primes, ++kept)) {
+                    allowed = i;
+                }
+            }
+        }
+        if (allowed == batch.size()) {
+            return batch;
+        }
+        int count = (int) Math.min(allowed, batch.getCount());
+        List<BigDecimal> largePrimes = batch.getLargePrimes().subList(0, (int) (allowed - count));
+        BigDecimal to = !largePrimes.isEmpty() ? largePrimes.get(largePrimes.size() - 1)
+                : count > 0 ? BigDecimal.valueOf(batch.getPrimes()[count - 1])
+                : batch.getFrom().subtract(BigDecimal.valueOf(2));
+        return new PrimeBatch(batch.getFrom(), to, batch.getPrimes(), count, largePrimes);
     }
 
     public void stopGenerating(Runnable runnable) {
-        if (!running) {
+        if (!started) {
             throw new IllegalStateException("stopping when not running...");
         }
-        running = false;
+        cancelRanges();
+        awaitCompletion();
+        runnable.run();
+    }
+
+    /**
+     * Waits until generating stopped, because of {@link #stopGenerating} or because the run policy was met.
+     *
+     * @throws IllegalStateException when generating failed, with the failure as its cause
+     */
+    public void awaitCompletion() {
         try {
-            stopLatch = new CountDownLatch(1);
-            stopLatch.await();
+            completed.await();
         } catch (Exception e) {
             throw new IllegalStateException("something went wrong while stopping...");
         }
-        runnable.run();
+        if (failure != null) {
+            throw new IllegalStateException("generating failed: " + failure.getMessage(), failure);
+        }
     }
 
     public PrimeResult getResult() {
         return calculatedPrimes;
     }
 
+    public PrimeLog getPrimeLog() {
+        return primeLog;
+    }
+
+    public void setPrimeLog(PrimeLog primeLog) {
+        this.primeLog = primeLog;
+    }
+
+    /**
+     * Sinks added before generating get every committed range, in order.
+     */
+    public void addSink(PrimeSink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Analytics added before generating are kept up to date with every committed range.
+     */
+    public void addAnalytics(PrimeAnalytics<?> primeAnalytics) {
+        analytics.add(primeAnalytics);
+    }
+
+    public List<PrimeAnalytics<?>> getAnalytics() {
+        return analytics;
+    }
+
+    public long getRetentionLimit() {
+        return retentionLimit;
+    }
+
+    /**
+     * Keeps only the primes up to the limit in memory, the rest only goes to the sinks and the log. Ranges are
+     * sieved with the primes kept, so generating stops at the square of the limit.
+     */
+    public void setRetentionLimit(long retentionLimit) {
+        this.retentionLimit = retentionLimit;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Generates every range on a virtual thread of its own instead of on the fork-join pool, from the next start on.
+     * Falls back to the pool on runtimes without virtual threads.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public RunPolicy getRunPolicy() {
+        return runPolicy;
+    }
+
+    /**
+     * Generating stops by itself once the policy is met, set before starting.
+     */
+    public void setRunPolicy(RunPolicy runPolicy) {
+        this.runPolicy = runPolicy;
+    }
+
+    /**
+     * @return the time the run policy is expected to take still, from the throughput of the engine in use
+     */
+    public long getProjectedRemainingNanos() {
+        RangeScheduler currentScheduler = scheduler;
+        if (runPolicy == null || currentScheduler == null) {
+            return -1;
+        }
+        String engine = currentScheduler.getNext().compareTo(SIEVE_LIMIT) <= 0
+                ? SegmentedSieveGenerator.ENGINE_NAME : primalityTest.getName();
+        //every core works on its own range, so the run goes that many times as fast as one range
+        return runPolicy.projectRemainingNanos(calculatedPrimes,
+                currentScheduler.getNumbersPerNanoSecond(engine) * cores);
+    }
+
+    public PrimalityTest getPrimalityTest() {
+        return primalityTest;
+    }
+
+    public void setPrimalityTest(PrimalityTest primalityTest) {
+        this.primalityTest = primalityTest;
+    }
+
+    public SieveKernel getSieveKernel() {
+        return sieveKernel;
+    }
+
+    /**
+     * Takes effect from the next scheduled range on, also while generating.
+     */
+    public void setSieveKernel(SieveKernel sieveKernel) {
+        this.sieveKernel = sieveKernel;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * Sets the size of the bit array sieve ranges are sieved in, from the next scheduled range on.
+     */
+    public void setSegmentBytes(int segmentBytes) {
+        this.segmentBytes = segmentBytes;
+    }
+
+    public AutoTuner getAutoTuner() {
+        return autoTuner;
+    }
+
+    /**
+     * Lets the tuner pick the segment size of every sieve range and take in their timings, set before starting.
+     */
+    public void setAutoTuner(AutoTuner autoTuner) {
+        this.autoTuner = autoTuner;
+    }
+
+    /**
+     * @return the number of threads generating
+     */
+    public int getCores() {
+        return cores;
+    }
+
+    public Wheel getWheel() {
+        return wheel;
+    }
+
+    /**
+     * Takes effect from the next scheduled range on, also while generating.
+     */
+    public void setWheel(Wheel wheel) {
+        this.wheel = wheel;
+        if (scheduler != null) {
+            scheduler.setWheel(wheel);
+        }
+    }
+
     public BigDecimal getMinCalculationsPerCore() {
         return minCalculationsPerCore;
     }
@@ -141,13 +595,42 @@ public class PrimeGeneratorController {
 
     public void setMinCalculationsPerCore(BigDecimal minCalculationsPerCore) {
         this.minCalculationsPerCore = minCalculationsPerCore;
+        if (scheduler != null) {
+            scheduler.setMinRangeSize(minCalculationsPerCore);
+        }
     }
 
     public void setMaxCalculationsPerCore(BigDecimal maxCalculationsPerCore) {
         this.maxCalculationsPerCore = maxCalculationsPerCore;
+        if (scheduler != null) {
+            scheduler.setMaxRangeSize(maxCalculationsPerCore);
+        }
     }
 
     public Collection<PrimeGeneratorTiming> getTimings() {
-        return timings;
+        return timings.snapshot();
+    }
+
+    public PrimeMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(PrimeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private static class ScheduledRange {
+        private final RangeGenerator generator;
+        private final BigDecimal to;
+        //filled in by the generating thread, one per analytics
+        private final Object[] summaries;
+        private final Future<?> future;
+
+        private ScheduledRange(RangeGenerator generator, BigDecimal to, Object[] summaries, Future<?> future) {
+            this.generator = generator;
+            this.to = to;
+            this.summaries = summaries;
+            this.future = future;
+        }
     }
 }
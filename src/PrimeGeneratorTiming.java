@@ -1,18 +1,24 @@
 import java.math.BigDecimal;
 
 public class PrimeGeneratorTiming {
+    private final String engine;
     private final long durationInNanoSeconds;
     private final BigDecimal beginSearch;
     private final BigDecimal endSearch;
     private final int numberOfPrimesFound;
 
-    public PrimeGeneratorTiming(long durationInNanoSeconds, BigDecimal beginSearch, BigDecimal endSearch, int numberOfPrimesFound) {
+    public PrimeGeneratorTiming(String engine, long durationInNanoSeconds, BigDecimal beginSearch, BigDecimal endSearch, int numberOfPrimesFound) {
+        this.engine = engine;
         this.durationInNanoSeconds = durationInNanoSeconds;
         this.beginSearch = beginSearch;
         this.endSearch = endSearch;
         this.numberOfPrimesFound = numberOfPrimesFound;
     }
 
+    public String getEngine() {
+        return engine;
+    }
+
     public long getDurationInNanoSeconds() {
         return durationInNanoSeconds;
     }
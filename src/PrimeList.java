@@ -0,0 +1,251 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Append-only, ascending list of primes stored as primitive longs in fixed size chunks.
+ * <p>
+ * <p>Growing never copies the primes already stored, only the (small) array of chunk references.
+ * A list can be stacked on a read-only base, e.g. a mapped {@link PrimeFile}, whose primes come first.
+ * Primes above the long range, only found by the BigDecimal fallback, are kept apart in ascending order.
+ * With a retention limit, primes above it are counted but not kept, so memory stays bounded while they are
+ * persisted elsewhere (see {@link PrimeSink}).</p>
+ */
+public class PrimeList implements PrimeSource {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final PrimeSource base;
+    private final long baseSize;
+
+    private volatile long[][] chunks = new long[0][];
+    private volatile long size = 0;
+    private volatile long lastPrime;
+    private final List<BigDecimal> largePrimes = new ArrayList<>();
+    private volatile long retentionLimit = Long.MAX_VALUE;
+    private long droppedPrimes = 0;
+
+    public PrimeList() {
+        this(null);
+    }
+
+    public PrimeList(PrimeSource base) {
+        this.base = base;
+        this.baseSize = base == null ? 0 : base.size();
+        this.lastPrime = baseSize == 0 ? 0 : base.get(baseSize - 1);
+    }
+
+    /**
+     * @return the read-only source the primes are stacked on, null when there is none
+     */
+    public PrimeSource getBase() {
+        return base;
+    }
+
+    public void add(long prime) {
+        if (prime > retentionLimit) {
+            ++droppedPrimes;
+            return;
+        }
+        long index = size;
+        if (baseSize + index > 0 && lastPrime >= prime) {
+            throw new IllegalArgumentException("primes must be added in ascending order: " + prime);
+        }
+        if (!largePrimes.isEmpty()) {
+            throw new IllegalArgumentException("prime added after primes above the long range: " + prime);
+        }
+        int chunk = (int) (index >>> CHUNK_BITS);
+        if (chunk == chunks.length) {
+            long[][] grown = Arrays.copyOf(chunks, chunk + 1);
+            grown[chunk] = new long[CHUNK_SIZE];
+            chunks = grown;
+        }
+        chunks[chunk][(int) (index & CHUNK_MASK)] = prime;
+        lastPrime = prime;
+        size = index + 1;
+    }
+
+    public void addAll(long[] primes, int count) {
+        for (int i = 0; i < count; ++i) {
+            add(primes[i]);
+        }
+    }
+
+    public void addAll(PrimeBatch batch) {
+        addAll(batch.getPrimes(), batch.getCount());
+        for (BigDecimal prime : batch.getLargePrimes()) {
+            add(prime);
+        }
+    }
+
+    public void add(BigDecimal prime) {
+        if (prime.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) <= 0) {
+            add(prime.longValueExact());
+            return;
+        }
+        if (!largePrimes.isEmpty() && largePrimes.get(largePrimes.size() - 1).compareTo(prime) >= 0) {
+            throw new IllegalArgumentException("primes must be added in ascending order: " + prime);
+        }
+        largePrimes.add(prime);
+    }
+
+    /**
+     * @return the number of primes inside the long range
+     */
+    @Override
+    public long size() {
+        return baseSize + size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0 && largePrimes.isEmpty();
+    }
+
+    @Override
+    public long get(long index) {
+        if (index < baseSize && index >= 0) {
+            return base.get(index);
+        }
+        return getOwn(index - baseSize);
+    }
+
+    private long getOwn(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + (baseSize + index) + ", size " + size());
+        }
+        return chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+    }
+
+    public long last() {
+        if (size() == 0) {
+            throw new NoSuchElementException("no primes stored");
+        }
+        return lastPrime;
+    }
+
+    @Override
+    public boolean contains(long value) {
+        if (baseSize > 0 && (size == 0 || value < getOwn(0))) {
+            return base.contains(value);
+        }
+        long rank = ownRank(value);
+        return rank > 0 && getOwn(rank - 1) == value;
+    }
+
+    @Override
+    public long rank(long value) {
+        if (baseSize > 0 && (size == 0 || value < getOwn(0))) {
+            return base.rank(value);
+        }
+        return baseSize + ownRank(value);
+    }
+
+    private long ownRank(long value) {
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (getOwn(middle) <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public PrimitiveIterator.OfLong iterator() {
+        return iterator(0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator(final long from, final long to) {
+        final PrimitiveIterator.OfLong baseIterator = baseSize == 0 ? null : base.iterator(from, to);
+        final long end = from > to ? 0 : ownRank(to);
+        return new PrimitiveIterator.OfLong() {
+            private long index = Math.min(end, ownRank(from - 1));
+
+            @Override
+            public boolean hasNext() {
+                return (baseIterator != null && baseIterator.hasNext()) || index < end;
+            }
+
+            @Override
+            public long nextLong() {
+                if (baseIterator != null && baseIterator.hasNext()) {
+                    return baseIterator.nextLong();
+                }
+                if (index >= end) {
+                    throw new NoSuchElementException();
+                }
+                return getOwn(index++);
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the stored primes smaller than or equal to upTo
+     */
+    public long[] toArray(long upTo) {
+        long count = rank(upTo);
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("too many primes for one array: " + count);
+        }
+        long[] result = new long[(int) count];
+        PrimitiveIterator.OfLong iterator = iterator(0, upTo);
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = iterator.nextLong();
+        }
+        return result;
+    }
+
+    public long getRetentionLimit() {
+        return retentionLimit;
+    }
+
+    /**
+     * Primes added from now on above the limit are dropped, primes above the long range are always kept.
+     */
+    public void setRetentionLimit(long retentionLimit) {
+        this.retentionLimit = retentionLimit;
+    }
+
+    /**
+     * @return the number of primes dropped for being above the retention limit
+     */
+    public long getDroppedPrimes() {
+        return droppedPrimes;
+    }
+
+    public List<BigDecimal> getLargePrimes() {
+        return Collections.unmodifiableList(largePrimes);
+    }
+
+    /**
+     * @return a rough size of the primes held on the heap, a mapped base is not counted
+     */
+    public long estimateHeapBytes() {
+        long[][] currentChunks = chunks;
+        //array headers are 16 bytes, a BigDecimal with its BigInteger about 100
+        long bytes = 16 + 8L * currentChunks.length;
+        for (long[] chunk : currentChunks) {
+            bytes += chunk == null ? 0 : 16 + 8L * chunk.length;
+        }
+        return bytes + 100L * largePrimes.size();
+    }
+
+    /**
+     * Like {@link #estimateHeapBytes()}, for deciding whether more primes still fit.
+     *
+     * @return the heap the list would take with that many more primes kept, whole chunks are allocated at once
+     */
+    public long estimateHeapBytes(long additionalPrimes) {
+        long chunkCount = Math.max(chunks.length, (size + additionalPrimes + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        return 16 + 8L * chunkCount + chunkCount * (16 + 8L * CHUNK_SIZE) + 100L * largePrimes.size();
+    }
+}
@@ -0,0 +1,457 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of generated batches, so a run survives a crash without rewriting every prime on save.
+ * <p>
+ * <p>Each batch becomes one record in the current segment file: magic, payload length, payload
+ * (maxGenerated, number of primes, the primes as varints like in {@link PrimeFile}) and a CRC32 of the payload.
+ * A checkpoint fsyncs the segment and then atomically replaces the checkpoint file, which records the segment,
+ * offset and maxGenerated covered. Anything written after the last checkpoint is discarded on restart.
+ * Compaction folds sealed segments into a new binary snapshot and deletes them.</p>
+ */
+public class PrimeLog implements Closeable {
+    private static final int RECORD_MAGIC = 0x50524C47;//"PRLG"
+    private static final long CHECKPOINT_MAGIC = 0x5052434B504F494EL;//"PRCKPOIN"
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_EXTENSION = ".log";
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint";
+
+    private final File directory;
+    private long segmentSize = 64L * 1024 * 1024;
+    private long checkpointIntervalMillis = 5000;
+    private boolean backgroundCompaction = false;
+
+    private long segment;
+    private FileChannel channel;
+    private long position;
+    private long maxGenerated;
+    private long lastCheckpoint = System.currentTimeMillis();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private ExecutorService compactionExecutor = null;
+
+    public PrimeLog(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Appends every checkpointed record beyond what result already covers, drops anything after the checkpoint
+     * and opens the log for appending.
+     *
+     * @return the result extended with the replayed primes
+     */
+    public synchronized PrimeResult replay(PrimeResult result) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("could not create " + directory);
+        }
+        long[] checkpoint = readCheckpoint();
+        long checkpointSegment = checkpoint == null ? 0 : checkpoint[0];
+        long checkpointOffset = checkpoint == null ? 0 : checkpoint[1];
+        BigDecimal recovered = replay(result, checkpointSegment, checkpointOffset, true);
+        segment = checkpointSegment;
+        channel = FileChannel.open(segmentFile(segment).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(checkpointOffset);
+        position = checkpointOffset;
+        channel.position(position);
+        maxGenerated = recovered.longValueExact();
+        return new PrimeResult(recovered, result.getAllPrimes());
+    }
+
+    /**
+     * Like {@link #replay(PrimeResult)}, but leaves the log as it is and doesn't open it for appending, so the
+     * generator writing it can go on meanwhile.
+     *
+     * @return the result extended with the checkpointed primes
+     */
+    public synchronized PrimeResult read(PrimeResult result) throws IOException {
+        long[] checkpoint = directory.exists() ? readCheckpoint() : null;
+        if (checkpoint == null) {
+            return result;
+        }
+        return new PrimeResult(replay(result, checkpoint[0], checkpoint[1], false), result.getAllPrimes());
+    }
+
+    /**
+     * Hands the checkpointed primes from from to to over to the consumer one record at a time, for the primes a list
+     * with a retention limit doesn't hold. Leaves the log as it is, like {@link #read(PrimeResult)}.
+     */
+    public synchronized void read(long from, long to, Consumer<PrimeBatch> consumer) throws IOException {
+        long[] checkpoint = directory.exists() ? readCheckpoint() : null;
+        if (checkpoint == null) {
+            return;
+        }
+        long last = 0;
+        for (long current : listSegments()) {
+            if (current > checkpoint[0]) {
+                break;
+            }
+            File file = segmentFile(current);
+            long end = current == checkpoint[0] ? checkpoint[1] : file.length();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), 1 << 16))) {
+                long offset = 0;
+                while (offset < end) {
+                    Record record = readRecord(in);
+                    if (record == null) {
+                        throw new IOException("corrupt record in " + file.getName() + " at offset " + offset);
+                    }
+                    offset += record.length;
+                    int count = 0;
+                    for (int i = 0; i < record.count; ++i) {
+                        long prime = record.primes[i];
+                        if (prime >= from && prime <= to && prime > last) {
+                            record.primes[count++] = prime;
+                            last = prime;
+                        }
+                    }
+                    if (count > 0) {
+                        consumer.accept(new PrimeBatch(BigDecimal.valueOf(record.primes[0]),
+                                BigDecimal.valueOf(Math.min(to, record.maxGenerated)), record.primes, count));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the primes of every record up to the checkpoint beyond what result already covers to its primes.
+     *
+     * @param dropUncheckpointed whether segments past the checkpoint are deleted, they are skipped otherwise
+     * @return the maxGenerated the primes cover now
+     */
+    private BigDecimal replay(PrimeResult result, long checkpointSegment, long checkpointOffset,
+                              boolean dropUncheckpointed) throws IOException {
+        PrimeList primes = result.getAllPrimes();
+        BigDecimal recovered = result.getMaxGenerated();
+        long replayed = 0;
+        for (long current : listSegments()) {
+            File file = segmentFile(current);
+            if (current > checkpointSegment) {
+                //never checkpointed, so possibly torn
+                if (dropUncheckpointed) {
+                    deleteFile(file);
+                }
+                continue;
+            }
+            long end = current == checkpointSegment ? checkpointOffset : file.length();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                long offset = 0;
+                while (offset < end) {
+                    Record record = readRecord(in);
+                    if (record == null) {
+                        throw new IOException("corrupt record in " + file.getName() + " at offset " + offset);
+                    }
+                    offset += record.length;
+                    if (BigDecimal.valueOf(record.maxGenerated).compareTo(recovered) > 0) {
+                        for (int i = 0; i < record.count; ++i) {
+                            if (primes.size() == 0 || record.primes[i] > primes.last()) {
+                                primes.add(record.primes[i]);
+                                ++replayed;
+                            }
+                        }
+                        recovered = BigDecimal.valueOf(record.maxGenerated);
+                    }
+                }
+            }
+        }
+        if (replayed > 0) {
+            System.out.println("replayed " + replayed + " primes from the log.");
+        }
+        return recovered;
+    }
+
+    /**
+     * Appends the first count primes as one record.
+     */
+    public synchronized void append(long maxGenerated, long[] primes, int count) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("log must be replayed before appending");
+        }
+        payload.reset();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeLong(maxGenerated);
+        out.writeInt(count);
+        long last = 0;
+        for (int i = 0; i < count; ++i) {
+            long prime = primes[i];
+            PrimeFileWriter.writeVarint(out, last == 0 ? prime : (prime - last) >>> 1);
+            last = prime;
+        }
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 12);
+        buffer.putInt(RECORD_MAGIC).putInt(bytes.length).put(bytes).putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+        this.maxGenerated = maxGenerated;
+        if (position >= segmentSize) {
+            rotate();
+        } else if (System.currentTimeMillis() - lastCheckpoint >= checkpointIntervalMillis) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Makes everything appended so far durable.
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        channel.force(false);
+        writeCheckpoint(segment, position, maxGenerated);
+        lastCheckpoint = System.currentTimeMillis();
+    }
+
+    private void rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        ++segment;
+        channel = FileChannel.open(segmentFile(segment).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        position = 0;
+        checkpoint();
+        if (backgroundCompaction) {
+            if (compactionExecutor == null) {
+                compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "prime log compaction");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            compactionExecutor.submit(this::compact);
+        }
+    }
+
+    /**
+     * Merges the latest binary snapshot and every sealed segment into a new snapshot, then deletes those segments
+     * once the snapshot is on disk under its final name.
+     */
+    public void compact() {
+        long activeSegment;
+        synchronized (this) {
+            activeSegment = segment;
+        }
+        List<Long> sealed = new ArrayList<>();
+        for (long current : listSegments()) {
+            if (current < activeSegment) {
+                sealed.add(current);
+            }
+        }
+        if (sealed.isEmpty()) {
+            return;
+        }
+        File snapshot = PrimeStorage.getLatestBinaryFile();
+        File temporaryFile = new File(directory, "compaction.tmp");
+        long compactedMaxGenerated;
+        try (PrimeFileWriter writer = new PrimeFileWriter(temporaryFile)) {
+            long last = 0;
+            compactedMaxGenerated = 0;
+            if (snapshot != null) {
+                try (PrimeFile primeFile = PrimeFile.open(snapshot)) {
+                    writer.addAll(primeFile);
+                    last = primeFile.getLastPrime();
+                    compactedMaxGenerated = primeFile.getMaxGenerated();
+                }
+            } else {
+                //the same starting point PrimeStorage.get() uses, it is never part of a logged batch
+                writer.add(PrimeStorage.FIRST_ODD_PRIME);
+                last = PrimeStorage.FIRST_ODD_PRIME;
+                compactedMaxGenerated = PrimeStorage.FIRST_ODD_PRIME;
+            }
+            for (long current : sealed) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(segmentFile(current)), 1 << 16))) {
+                    Record record;
+                    while ((record = readRecord(in)) != null) {
+                        if (record.maxGenerated <= compactedMaxGenerated) {
+                            continue;
+                        }
+                        for (int i = 0; i < record.count; ++i) {
+                            if (record.primes[i] > last) {
+                                writer.add(record.primes[i]);
+                                last = record.primes[i];
+                            }
+                        }
+                        compactedMaxGenerated = record.maxGenerated;
+                    }
+                }
+            }
+            writer.finish(compactedMaxGenerated);
+        } catch (Exception e) {
+            System.out.println("compaction failed: " + e.getMessage());
+            deleteFile(temporaryFile);
+            return;
+        }
+        try {
+            PrimeStorage.replace(temporaryFile, PrimeStorage.getBinaryFile(compactedMaxGenerated));
+        } catch (IOException e) {
+            System.out.println("compaction failed: " + e.getMessage());
+            return;
+        }
+        for (long current : sealed) {
+            deleteFile(segmentFile(current));
+        }
+        if (snapshot != null && !snapshot.equals(PrimeStorage.getBinaryFile(compactedMaxGenerated))) {
+            deleteFile(snapshot);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            checkpoint();
+            channel.close();
+            channel = null;
+        }
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+        }
+    }
+
+    public synchronized long getMaxGenerated() {
+        return maxGenerated;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    public boolean isBackgroundCompaction() {
+        return backgroundCompaction;
+    }
+
+    public void setBackgroundCompaction(boolean backgroundCompaction) {
+        this.backgroundCompaction = backgroundCompaction;
+    }
+
+    /**
+     * @return the next record, null at the end of the stream or at a torn or corrupt record
+     */
+    private static Record readRecord(DataInputStream in) throws IOException {
+        try {
+            if (in.readInt() != RECORD_MAGIC) {
+                return null;
+            }
+            int length = in.readInt();
+            if (length < 12) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            if (in.readInt() != (int) crc.getValue()) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            Record record = new Record();
+            record.length = length + 12L;
+            record.maxGenerated = buffer.getLong();
+            record.count = buffer.getInt();
+            record.primes = new long[record.count];
+            long last = 0;
+            for (int i = 0; i < record.count; ++i) {
+                long value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get();
+                    value |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                last = i == 0 ? value : last + (value << 1);
+                record.primes[i] = last;
+            }
+            return record;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        File file = new File(directory, CHECKPOINT_FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readLong() != CHECKPOINT_MAGIC) {
+                throw new IOException("corrupt checkpoint file");
+            }
+            return new long[]{in.readLong(), in.readLong(), in.readLong()};
+        }
+    }
+
+    private void writeCheckpoint(long segment, long offset, long maxGenerated) throws IOException {
+        File temporaryFile = new File(directory, CHECKPOINT_FILE_NAME + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temporaryFile);
+             DataOutputStream out = new DataOutputStream(fileOut)) {
+            out.writeLong(CHECKPOINT_MAGIC);
+            out.writeLong(segment);
+            out.writeLong(offset);
+            out.writeLong(maxGenerated);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        PrimeStorage.replace(temporaryFile, new File(directory, CHECKPOINT_FILE_NAME));
+    }
+
+    private long[] listSegments() {
+        File[] files = directory.listFiles(file -> file.getName().startsWith(SEGMENT_PREFIX)
+                && file.getName().endsWith(SEGMENT_EXTENSION));
+        if (files == null) {
+            return new long[0];
+        }
+        long[] segments = new long[files.length];
+        for (int i = 0; i < files.length; ++i) {
+            String name = files[i].getName();
+            segments[i] = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_EXTENSION.length()));
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, String.format("%s%019d%s", SEGMENT_PREFIX, segment, SEGMENT_EXTENSION));
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            System.out.println("could not delete " + file);
+        }
+    }
+
+    private static class Record {
+        private long length;
+        private long maxGenerated;
+        private int count;
+        private long[] primes;
+    }
+}
@@ -0,0 +1,38 @@
+import java.math.BigDecimal;
+
+/**
+ * Writes every batch to the {@link PrimeLog}, the durable copy of whatever the in-memory list doesn't retain.
+ */
+public class PrimeLogSink extends PrimeSink {
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private final PrimeLog primeLog;
+    private final PrimeMetrics metrics;
+
+    public PrimeLogSink(PrimeLog primeLog, PrimeMetrics metrics) {
+        this.primeLog = primeLog;
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void accept(PrimeBatch batch) throws Exception {
+        //the log only covers the long range, beyond it the results are kept for the final save
+        if (batch.getTo().compareTo(LONG_MAX) > 0 || !batch.getLargePrimes().isEmpty()) {
+            return;
+        }
+        long saveStart = System.nanoTime();
+        primeLog.append(batch.getTo().longValueExact(), batch.getPrimes(), batch.getCount());
+        if (metrics != null) {
+            metrics.recordSave(System.nanoTime() - saveStart);
+        }
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    public PrimeLog getPrimeLog() {
+        return primeLog;
+    }
+}
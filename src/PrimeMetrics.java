@@ -0,0 +1,296 @@
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Live counters and latency histograms of a generation run, readable through JMX and as Prometheus text.
+ * All durations are recorded in nanoseconds.
+ */
+public class PrimeMetrics implements PrimeMetricsMBean {
+    public static final String OBJECT_NAME = "PrimeGeneration:type=PrimeMetrics";
+    //threads that ended are dropped past this many, a virtual thread per range would pile up otherwise
+    private static final int THREADS_KEPT = 256;
+
+    private final long startTime = System.nanoTime();
+    private final LongAdder numbersProcessed = new LongAdder();
+    private final LongAdder primesFound = new LongAdder();
+    private final LongAdder rangesCommitted = new LongAdder();
+    private final LongAdder barrierWaitNanos = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    //by thread id, names needn't be unique or even set
+    private final Map<Long, ThreadBusy> busyPerThread = new ConcurrentHashMap<>();
+    private volatile int generatingThreads = 0;
+    private final LatencyHistogram generateLatency = new LatencyHistogram();
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+    private final LatencyHistogram saveLatency = new LatencyHistogram();
+    private volatile LongSupplier resultHeapBytes = () -> 0;
+    private volatile LongSupplier maxGenerated = () -> 0;
+    private volatile LongSupplier targetRemainingNanos = () -> -1;
+    private volatile PrimeSegmentStore segmentStore = null;
+
+    public void recordGenerate(PrimeGeneratorTiming timing) {
+        generateLatency.record(timing.getDurationInNanoSeconds());
+        busyNanos.add(timing.getDurationInNanoSeconds());
+        Thread thread = Thread.currentThread();
+        busyPerThread.computeIfAbsent(thread.getId(), id -> new ThreadBusy(thread))
+                .nanos.add(timing.getDurationInNanoSeconds());
+        if (busyPerThread.size() > THREADS_KEPT) {
+            busyPerThread.values().removeIf(busy -> !busy.isAlive());
+        }
+    }
+
+    public void recordCommit(PrimeGeneratorTiming timing, long durationInNanoSeconds) {
+        commitLatency.record(durationInNanoSeconds);
+        numbersProcessed.add(timing.getEndSearch().subtract(timing.getBeginSearch()).longValue() + 1);
+        primesFound.add(timing.getNumberOfPrimesFound());
+        rangesCommitted.increment();
+    }
+
+    public void recordBarrierWait(long durationInNanoSeconds) {
+        barrierWaitNanos.add(durationInNanoSeconds);
+    }
+
+    public void recordSave(long durationInNanoSeconds) {
+        saveLatency.record(durationInNanoSeconds);
+    }
+
+    public void setResultHeapBytes(LongSupplier resultHeapBytes) {
+        this.resultHeapBytes = resultHeapBytes;
+    }
+
+    /**
+     * @param generatingThreads the threads ranges are generated on, the utilisation is averaged over them
+     */
+    public void setGeneratingThreads(int generatingThreads) {
+        this.generatingThreads = generatingThreads;
+    }
+
+    public void setMaxGenerated(LongSupplier maxGenerated) {
+        this.maxGenerated = maxGenerated;
+    }
+
+    /**
+     * @param targetRemainingNanos the projected time to the run target, negative when there is none
+     */
+    public void setTargetRemainingNanos(LongSupplier targetRemainingNanos) {
+        this.targetRemainingNanos = targetRemainingNanos;
+    }
+
+    /**
+     * @param segmentStore the store the saved primes are read from, null when they are on the heap
+     */
+    public void setSegmentStore(PrimeSegmentStore segmentStore) {
+        this.segmentStore = segmentStore;
+    }
+
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            System.out.println("could not register metrics: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getNumbersProcessed() {
+        return numbersProcessed.sum();
+    }
+
+    @Override
+    public long getPrimesFound() {
+        return primesFound.sum();
+    }
+
+    @Override
+    public long getRangesCommitted() {
+        return rangesCommitted.sum();
+    }
+
+    @Override
+    public double getNumbersPerSecond() {
+        return getNumbersProcessed() * 1e9 / Math.max(1, System.nanoTime() - startTime);
+    }
+
+    /**
+     * @return the busy fraction of the average generating thread since the start
+     */
+    @Override
+    public double getThreadUtilisation() {
+        int threads = generatingThreads > 0 ? generatingThreads : busyPerThread.size();
+        if (threads == 0) {
+            return 0;
+        }
+        return (double) busyNanos.sum() / threads / Math.max(1, System.nanoTime() - startTime);
+    }
+
+    /**
+     * @return the busy fraction of every generating thread since the start, by thread id
+     */
+    public Map<Long, Double> getThreadUtilisationPerThread() {
+        Map<Long, Double> result = new ConcurrentHashMap<>();
+        long elapsed = Math.max(1, System.nanoTime() - startTime);
+        busyPerThread.forEach((thread, busy) -> result.put(thread, (double) busy.nanos.sum() / elapsed));
+        return result;
+    }
+
+    @Override
+    public long getBarrierWaitMillis() {
+        return barrierWaitNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getResultHeapBytes() {
+        return resultHeapBytes.getAsLong();
+    }
+
+    @Override
+    public long getMaxGenerated() {
+        return maxGenerated.getAsLong();
+    }
+
+    @Override
+    public double getTargetRemainingSeconds() {
+        long remaining = targetRemainingNanos.getAsLong();
+        return remaining < 0 || remaining == Long.MAX_VALUE ? -1 : remaining / 1e9;
+    }
+
+    @Override
+    public long getSegmentCacheHits() {
+        PrimeSegmentStore store = segmentStore;
+        return store == null ? 0 : store.getHits();
+    }
+
+    @Override
+    public long getSegmentCacheMisses() {
+        PrimeSegmentStore store = segmentStore;
+        return store == null ? 0 : store.getMisses();
+    }
+
+    @Override
+    public long getSegmentCacheEvictions() {
+        PrimeSegmentStore store = segmentStore;
+        return store == null ? 0 : store.getEvictions();
+    }
+
+    @Override
+    public long getSegmentCacheBytes() {
+        PrimeSegmentStore store = segmentStore;
+        return store == null ? 0 : store.getCachedBytes();
+    }
+
+    @Override
+    public double getGenerateMeanMillis() {
+        return generateLatency.getMean() / 1e6;
+    }
+
+    @Override
+    public long getGenerateP99Millis() {
+        return generateLatency.getValueAtQuantile(0.99) / 1000000;
+    }
+
+    @Override
+    public double getCommitMeanMillis() {
+        return commitLatency.getMean() / 1e6;
+    }
+
+    @Override
+    public long getCommitP99Millis() {
+        return commitLatency.getValueAtQuantile(0.99) / 1000000;
+    }
+
+    @Override
+    public double getSaveMeanMillis() {
+        return saveLatency.getMean() / 1e6;
+    }
+
+    @Override
+    public long getSaveP99Millis() {
+        return saveLatency.getValueAtQuantile(0.99) / 1000000;
+    }
+
+    public String toPrometheusText() {
+        StringBuilder builder = new StringBuilder();
+        counter(builder, "primes_numbers_processed_total", "Numbers checked in committed ranges.", getNumbersProcessed());
+        counter(builder, "primes_found_total", "Primes found in committed ranges.", getPrimesFound());
+        counter(builder, "primes_ranges_committed_total", "Ranges committed.", getRangesCommitted());
+        counter(builder, "primes_barrier_wait_seconds_total", "Time spent waiting for the oldest range.",
+                barrierWaitNanos.sum() / 1e9);
+        gauge(builder, "primes_numbers_per_second", "Average throughput since the start.", getNumbersPerSecond());
+        gauge(builder, "primes_result_heap_bytes", "Estimated heap used by the prime result.", getResultHeapBytes());
+        gauge(builder, "primes_max_generated", "Highest number verified so far.", getMaxGenerated());
+        gauge(builder, "primes_target_remaining_seconds", "Projected time to the run target, -1 without one.",
+                getTargetRemainingSeconds());
+        counter(builder, "primes_segment_cache_hits_total", "Saved primes served from decoded segments.",
+                getSegmentCacheHits());
+        counter(builder, "primes_segment_cache_misses_total", "Segments decoded from the prime file.",
+                getSegmentCacheMisses());
+        counter(builder, "primes_segment_cache_evictions_total", "Decoded segments dropped from the cache.",
+                getSegmentCacheEvictions());
+        gauge(builder, "primes_segment_cache_bytes", "Estimated heap held by decoded segments.",
+                getSegmentCacheBytes());
+        builder.append("# HELP primes_thread_utilisation Busy fraction of each generating thread.\n");
+        builder.append("# TYPE primes_thread_utilisation gauge\n");
+        long elapsed = Math.max(1, System.nanoTime() - startTime);
+        for (Map.Entry<Long, ThreadBusy> thread : busyPerThread.entrySet()) {
+            builder.append("primes_thread_utilisation{thread=\"").append(thread.getKey()).append("\",name=\"")
+                    .append(thread.getValue().name.replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append("\"} ").append(format((double) thread.getValue().nanos.sum() / elapsed)).append('\n');
+        }
+        summary(builder, "primes_generate_seconds", "Duration of generate() per range.", generateLatency);
+        summary(builder, "primes_commit_seconds", "Duration of committing a range.", commitLatency);
+        summary(builder, "primes_save_seconds", "Duration of persisting results.", saveLatency);
+        return builder.toString();
+    }
+
+    private static void counter(StringBuilder builder, String name, String help, double value) {
+        metric(builder, name, help, "counter", value);
+    }
+
+    private static void gauge(StringBuilder builder, String name, String help, double value) {
+        metric(builder, name, help, "gauge", value);
+    }
+
+    private static void metric(StringBuilder builder, String name, String help, String type, double value) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        builder.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static void summary(StringBuilder builder, String name, String help, LatencyHistogram histogram) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(" summary\n");
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            builder.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(format(histogram.getValueAtQuantile(quantile) / 1e9)).append('\n');
+        }
+        builder.append(name).append("_sum ").append(format(histogram.getSum() / 1e9)).append('\n');
+        builder.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static class ThreadBusy {
+        private final WeakReference<Thread> thread;
+        private final String name;
+        private final LongAdder nanos = new LongAdder();
+
+        private ThreadBusy(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+            this.name = thread.getName();
+        }
+
+        private boolean isAlive() {
+            Thread current = thread.get();
+            return current != null && current.isAlive();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+public interface PrimeMetricsMBean {
+    long getNumbersProcessed();
+
+    long getPrimesFound();
+
+    long getRangesCommitted();
+
+    double getNumbersPerSecond();
+
+    double getThreadUtilisation();
+
+    long getBarrierWaitMillis();
+
+    long getResultHeapBytes();
+
+    long getMaxGenerated();
+
+    double getTargetRemainingSeconds();
+
+    long getSegmentCacheHits();
+
+    long getSegmentCacheMisses();
+
+    long getSegmentCacheEvictions();
+
+    long getSegmentCacheBytes();
+
+    double getGenerateMeanMillis();
+
+    long getGenerateP99Millis();
+
+    double getCommitMeanMillis();
+
+    long getCommitP99Millis();
+
+    double getSaveMeanMillis();
+
+    long getSaveP99Millis();
+}
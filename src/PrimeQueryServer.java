@@ -0,0 +1,164 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plain text http interface to a {@link PrimeQueryService} on localhost:
+ * /isPrime?n=, /pi?x=, /nth?n=, /next?x=, /previous?x= and /range?from=&amp;to= (one prime per line).
+ * /export?from=&amp;to=&amp;format=gaps|bitset&amp;compress=deflate sends the range as a {@link PrimeExport}.
+ */
+public class PrimeQueryServer {
+    //keeps a single request from streaming an unbounded range
+    private static final long MAX_RANGE_SPAN = 1L << 32;
+
+    private final PrimeQueryService service;
+    private final HttpServer server;
+    private final ExecutorService executor =
+            Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    public PrimeQueryServer(int port, PrimeQueryService service) throws IOException {
+        this.service = service;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/isPrime", exchange -> respond(exchange,
+                () -> Boolean.toString(service.isPrime(parameter(exchange, "n")))));
+        server.createContext("/pi", exchange -> respond(exchange,
+                () -> Long.toString(service.countUpTo(parameter(exchange, "x")))));
+        server.createContext("/nth", exchange -> respond(exchange,
+                () -> Long.toString(service.nth(parameter(exchange, "n")))));
+        server.createContext("/next", exchange -> respond(exchange,
+                () -> Long.toString(service.next(parameter(exchange, "x")))));
+        server.createContext("/previous", exchange -> respond(exchange,
+                () -> Long.toString(service.previous(parameter(exchange, "x")))));
+        server.createContext("/range", this::range);
+        server.createContext("/export", this::export);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void range(HttpExchange exchange) throws IOException {
+        PrimitiveIterator.OfLong primes;
+        try {
+            long from = parameter(exchange, "from");
+            long to = parameter(exchange, "to");
+            if (to - from > MAX_RANGE_SPAN) {
+                throw new IllegalArgumentException("ranges are limited to " + MAX_RANGE_SPAN + " numbers");
+            }
+            primes = service.range(from, to);
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, e.getMessage());
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        //streamed in chunks, the range is never held in memory as a whole
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            while (primes.hasNext()) {
+                writer.write(Long.toString(primes.nextLong()));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private void export(HttpExchange exchange) throws IOException {
+        File file = File.createTempFile("prime-export", ".tmp");
+        try {
+            try {
+                long from = parameter(exchange, "from");
+                long to = parameter(exchange, "to");
+                if (to - from > MAX_RANGE_SPAN) {
+                    throw new IllegalArgumentException("ranges are limited to " + MAX_RANGE_SPAN + " numbers");
+                }
+                ExportFormat format = ExportFormat.forName(textParameter(exchange, "format",
+                        ExportFormat.GAPS.getName()));
+                boolean deflate = "deflate".equals(textParameter(exchange, "compress", "none"));
+                PrimeExporter.export(file, service.range(from, to), from, to, format, deflate);
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, e.getMessage());
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            //the index goes before the blocks, so the export is only complete once written; the response body is
+            //a plain stream, so it gets a buffered copy of the file rather than a transfer by the operating system
+            try (PrimeExport export = PrimeExport.open(file); OutputStream out = exchange.getResponseBody()) {
+                exchange.sendResponseHeaders(200, file.length());
+                export.transferTo(out);
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private interface Query {
+        String answer();
+    }
+
+    private static void respond(HttpExchange exchange, Query query) throws IOException {
+        String answer;
+        try {
+            answer = query.answer();
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, e.getMessage());
+            return;
+        }
+        send(exchange, 200, answer);
+    }
+
+    private static void send(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static long parameter(HttpExchange exchange, String name) {
+        String value = textParameter(exchange, name, null);
+        if (value == null) {
+            throw new IllegalArgumentException("missing parameter " + name);
+        }
+        return Long.parseLong(value.replace("_", ""));
+    }
+
+    private static String textParameter(HttpExchange exchange, String name, String defaultValue) {
+        String query = exchange.getRequestURI().getQuery();
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int separator = pair.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(pair.substring(0, separator), pair.substring(separator + 1));
+                }
+            }
+        }
+        return parameters.getOrDefault(name, defaultValue);
+    }
+}
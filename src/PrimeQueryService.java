@@ -0,0 +1,254 @@
+import java.math.BigDecimal;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.Supplier;
+
+/**
+ * Answers prime queries from stored results without materialising them: ranks come from the sparse index of the
+ * binary prime file (or a binary search in memory), numbers past maxGenerated are sieved on demand.
+ * Unlike the stored lists the answers include 2.
+ */
+public class PrimeQueryService {
+    //numbers sieved per step when a query reaches past maxGenerated
+    private static final long ON_DEMAND_CHUNK = 1 << 20;
+    //longest stretch past maxGenerated a single query may sieve
+    private static final long MAX_ON_DEMAND_SPAN = 1L << 32;
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private final Supplier<PrimeResult> results;
+    private long[] sievingPrimes = new long[0];
+    private long sievingPrimesBound = 0;
+
+    public PrimeQueryService(PrimeResult result) {
+        this(() -> result);
+    }
+
+    /**
+     * @param results asked for the latest result on every query, so a running generator can be followed
+     */
+    public PrimeQueryService(Supplier<PrimeResult> results) {
+        this.results = results;
+    }
+
+    public long getMaxGenerated() {
+        return snapshot().maxGenerated;
+    }
+
+    public boolean isPrime(long value) {
+        if (value < 2) {
+            return false;
+        }
+        Snapshot snapshot = snapshot();
+        if (value <= snapshot.maxGenerated) {
+            return value == 2 || snapshot.primes.contains(value);
+        }
+        return MillerRabinTest.INSTANCE.isPrime(value);
+    }
+
+    /**
+     * @return pi(x), the number of primes smaller than or equal to x
+     */
+    public long countUpTo(long x) {
+        if (x < 2) {
+            return 0;
+        }
+        Snapshot snapshot = snapshot();
+        if (x <= snapshot.maxGenerated) {
+            return 1 + snapshot.primes.rank(x);
+        }
+        checkOnDemandSpan(snapshot, x);
+        long count = 1 + snapshot.primes.rank(snapshot.maxGenerated);
+        for (long low = snapshot.maxGenerated + 1; low <= x; low += ON_DEMAND_CHUNK) {
+            count += sieve(low, Math.min(x, low + ON_DEMAND_CHUNK - 1)).length;
+        }
+        return count;
+    }
+
+    /**
+     * @return the n-th prime, counting from 1 for the prime 2
+     */
+    public long nth(long n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("primes are counted from 1: " + n);
+        }
+        if (n == 1) {
+            return 2;
+        }
+        Snapshot snapshot = snapshot();
+        long stored = snapshot.primes.rank(snapshot.maxGenerated);
+        if (n - 1 <= stored) {
+            return snapshot.primes.get(n - 2);
+        }
+        long remaining = n - 1 - stored;
+        for (long low = snapshot.maxGenerated + 1; ; low += ON_DEMAND_CHUNK) {
+            checkOnDemandSpan(snapshot, low);
+            long[] primes = sieve(low, low + ON_DEMAND_CHUNK - 1);
+            if (remaining <= primes.length) {
+                return primes[(int) remaining - 1];
+            }
+            remaining -= primes.length;
+        }
+    }
+
+    /**
+     * @return the smallest prime larger than value
+     */
+    public long next(long value) {
+        if (value < 2) {
+            return 2;
+        }
+        if (value >= SegmentedSieveGenerator.MAX_VALUE) {
+            //also keeps value + 1 from overflowing
+            throw new IllegalArgumentException("outside of the supported range: " + value);
+        }
+        Snapshot snapshot = snapshot();
+        if (value < snapshot.maxGenerated) {
+            long index = snapshot.primes.rank(value);
+            if (index < snapshot.primes.size()) {
+                long prime = snapshot.primes.get(index);
+                if (prime <= snapshot.maxGenerated) {
+                    return prime;
+                }
+            }
+        }
+        for (long low = Math.max(value, snapshot.maxGenerated) + 1; ; low += ON_DEMAND_CHUNK) {
+            checkOnDemandSpan(snapshot, low);
+            long[] primes = sieve(low, low + ON_DEMAND_CHUNK - 1);
+            if (primes.length > 0) {
+                return primes[0];
+            }
+        }
+    }
+
+    /**
+     * @return the largest prime smaller than value
+     */
+    public long previous(long value) {
+        if (value <= 2) {
+            throw new IllegalArgumentException("there is no prime below " + value);
+        }
+        Snapshot snapshot = snapshot();
+        for (long high = value - 1; high > snapshot.maxGenerated; high -= ON_DEMAND_CHUNK) {
+            checkOnDemandSpan(snapshot, high);
+            long[] primes = sieve(Math.max(snapshot.maxGenerated + 1, high - ON_DEMAND_CHUNK + 1), high);
+            if (primes.length > 0) {
+                return primes[primes.length - 1];
+            }
+        }
+        long rank = snapshot.primes.rank(Math.min(value - 1, snapshot.maxGenerated));
+        return rank == 0 ? 2 : snapshot.primes.get(rank - 1);
+    }
+
+    /**
+     * @return an ascending iterator over the primes p with from &lt;= p &lt;= to, sieving lazily past maxGenerated
+     */
+    public PrimitiveIterator.OfLong range(final long from, final long to) {
+        final Snapshot snapshot = snapshot();
+        if (to > snapshot.maxGenerated) {
+            checkOnDemandSpan(snapshot, to);
+        }
+        final PrimitiveIterator.OfLong stored = snapshot.primes.iterator(from, Math.min(to, snapshot.maxGenerated));
+        return new PrimitiveIterator.OfLong() {
+            private boolean two = from <= 2 && to >= 2;
+            private long[] chunk = new long[0];
+            private int chunkIndex = 0;
+            private long low = Math.max(from, snapshot.maxGenerated + 1);
+
+            @Override
+            public boolean hasNext() {
+                if (two || stored.hasNext() || chunkIndex < chunk.length) {
+                    return true;
+                }
+                while (low <= to) {
+                    long high = Math.min(to, low + ON_DEMAND_CHUNK - 1);
+                    chunk = sieve(low, high);
+                    chunkIndex = 0;
+                    low = high + 1;
+                    if (chunk.length > 0) {
+                        return true;
+                    }
+                    if (high == to) {
+                        break;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (two) {
+                    two = false;
+                    return 2;
+                }
+                return stored.hasNext() ? stored.nextLong() : chunk[chunkIndex++];
+            }
+        };
+    }
+
+    private Snapshot snapshot() {
+        PrimeResult result = results.get();
+        //past the retention limit the primes are no longer in memory and are sieved again on demand
+        long maxGenerated = Math.min(result.getMaxGenerated().min(LONG_MAX).longValue(),
+                result.getAllPrimes().getRetentionLimit());
+        return new Snapshot(result.getAllPrimes(), Math.max(maxGenerated, 2));
+    }
+
+    private static void checkOnDemandSpan(Snapshot snapshot, long value) {
+        if (value > SegmentedSieveGenerator.MAX_VALUE) {
+            throw new IllegalArgumentException("outside of the supported range: " + value);
+        }
+        if (value - snapshot.maxGenerated > MAX_ON_DEMAND_SPAN) {
+            throw new IllegalArgumentException(value + " lies too far past the generated primes ("
+                    + snapshot.maxGenerated + ")");
+        }
+    }
+
+    /**
+     * @return the odd primes p with low &lt;= p &lt;= high
+     */
+    private long[] sieve(long low, long high) {
+        low = Math.max(low, 3);
+        high = Math.min(high, SegmentedSieveGenerator.MAX_VALUE);
+        if (low > high) {
+            return new long[0];
+        }
+        SegmentedSieveGenerator generator = new SegmentedSieveGenerator(low, high,
+                getSievingPrimes((long) Math.sqrt((double) high) + 1));
+        generator.generate();
+        PrimeList primes = new PrimeList();
+        generator.addPrimesTo(primes);
+        return primes.toArray(high);
+    }
+
+    /**
+     * @return at least the odd primes up to bound, from storage when generated that far, otherwise sieved
+     */
+    private synchronized long[] getSievingPrimes(long bound) {
+        if (bound <= sievingPrimesBound) {
+            return sievingPrimes;
+        }
+        Snapshot snapshot = snapshot();
+        long[] primes;
+        if (bound <= snapshot.maxGenerated) {
+            primes = snapshot.primes.toArray(bound);
+        } else {
+            primes = SegmentedSieveGenerator.oddPrimesUpTo(bound);
+        }
+        sievingPrimes = primes;
+        sievingPrimesBound = bound;
+        return primes;
+    }
+
+    private static class Snapshot {
+        private final PrimeList primes;
+        private final long maxGenerated;
+
+        private Snapshot(PrimeList primes, long maxGenerated) {
+            this.primes = primes;
+            this.maxGenerated = maxGenerated;
+        }
+    }
+}
@@ -1,11 +1,10 @@
 import java.math.BigDecimal;
-import java.util.Set;
 
 public class PrimeResult {
     private final BigDecimal maxGenerated;
-    private final Set<BigDecimal> allPrimes;
+    private final PrimeList allPrimes;
 
-    public PrimeResult(BigDecimal maxGenerated, Set<BigDecimal> allPrimes) {
+    public PrimeResult(BigDecimal maxGenerated, PrimeList allPrimes) {
         this.maxGenerated = maxGenerated;
         this.allPrimes = allPrimes;
     }
@@ -14,7 +13,7 @@ public class PrimeResult {
         return maxGenerated;
     }
 
-    public Set<BigDecimal> getAllPrimes() {
+    public PrimeList getAllPrimes() {
         return allPrimes;
     }
 }
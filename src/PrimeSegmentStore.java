@@ -0,0 +1,269 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Splits a prime file into segments of fixed numeric span, decoded on first access and kept in an LRU cache
+ * bounded by bytes. Hot ranges, like the small primes every divisor search walks through, stay decoded
+ * while the bulk of the file stays on disk.
+ */
+public class PrimeSegmentStore implements PrimeSource, Closeable {
+    public static final long DEFAULT_SEGMENT_SPAN = 1L << 22;
+    public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+    //array header and cache entry, on top of 8 bytes per prime
+    private static final long SEGMENT_OVERHEAD_BYTES = 96;
+
+    private final PrimeFile file;
+    private final long segmentSpan;
+    private final Map<Long, Segment> cache = new LinkedHashMap<>(16, 0.75f, true);
+    //the cached segments that hold primes by the index of their first prime, guarded by the cache
+    private final TreeMap<Long, Segment> cacheByIndex = new TreeMap<>();
+    private long maxCacheBytes;
+    private long cachedBytes = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public PrimeSegmentStore(PrimeFile file) {
+        this(file, DEFAULT_SEGMENT_SPAN, DEFAULT_CACHE_BYTES);
+    }
+
+    public PrimeSegmentStore(PrimeFile file, long segmentSpan, long maxCacheBytes) {
+        if (segmentSpan < 2) {
+            throw new IllegalArgumentException("segments must span at least 2 numbers: " + segmentSpan);
+        }
+        this.file = file;
+        this.segmentSpan = segmentSpan;
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    public PrimeFile getFile() {
+        return file;
+    }
+
+    @Override
+    public long size() {
+        return file.size();
+    }
+
+    @Override
+    public long get(long index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index + " of " + size());
+        }
+        Segment segment = getCachedSegmentAt(index);
+        if (segment == null) {
+            //the file's sparse index finds the value, after which the segment serves its neighbours
+            segment = getSegment(file.get(index) / segmentSpan);
+        }
+        return segment.primes[(int) (index - segment.firstIndex)];
+    }
+
+    /**
+     * @return the cached segment holding the prime at index, null when it isn't cached
+     */
+    private Segment getCachedSegmentAt(long index) {
+        synchronized (cache) {
+            Map.Entry<Long, Segment> entry = cacheByIndex.floorEntry(index);
+            if (entry == null || index >= entry.getKey() + entry.getValue().primes.length) {
+                return null;
+            }
+            Segment segment = entry.getValue();
+            //marks the segment as recently used
+            cache.get(segment.number);
+            hits.increment();
+            return segment;
+        }
+    }
+
+    @Override
+    public long rank(long value) {
+        if (value < 0) {
+            return 0;
+        }
+        Segment segment = getSegment(value / segmentSpan);
+        int position = Arrays.binarySearch(segment.primes, value);
+        return segment.firstIndex + (position >= 0 ? position + 1 : -position - 1);
+    }
+
+    @Override
+    public boolean contains(long value) {
+        return value >= 0 && Arrays.binarySearch(getSegment(value / segmentSpan).primes, value) >= 0;
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator(final long from, final long to) {
+        final long last = Math.min(to, file.getLastPrime());
+        return new PrimitiveIterator.OfLong() {
+            private long segmentNumber = Math.max(0, from) / segmentSpan;
+            //a reference to the segment keeps it usable even when the cache evicts it
+            private Segment segment = null;
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (segment == null || position >= segment.primes.length) {
+                    if (from > last || segmentNumber > last / segmentSpan) {
+                        return false;
+                    }
+                    segment = getSegment(segmentNumber++);
+                    position = segment.indexOf(from);
+                }
+                return segment.primes[position] <= last;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return segment.primes[position++];
+            }
+        };
+    }
+
+    private Segment getSegment(long number) {
+        synchronized (cache) {
+            Segment segment = cache.get(number);
+            if (segment != null) {
+                hits.increment();
+                return segment;
+            }
+        }
+        misses.increment();
+        //decoded outside the lock, so one slow load doesn't hold up hits on other segments
+        Segment loaded = load(number);
+        synchronized (cache) {
+            Segment existing = cache.putIfAbsent(number, loaded);
+            if (existing != null) {
+                return existing;
+            }
+            cachedBytes += loaded.bytes();
+            if (loaded.primes.length > 0) {
+                cacheByIndex.put(loaded.firstIndex, loaded);
+            }
+            //the loaded segment is the most recent entry, so it is never the one evicted
+            Iterator<Segment> eldest = cache.values().iterator();
+            while (cachedBytes > maxCacheBytes && cache.size() > 1) {
+                Segment evicted = eldest.next();
+                cachedBytes -= evicted.bytes();
+                eldest.remove();
+                cacheByIndex.remove(evicted.firstIndex, evicted);
+                evictions.increment();
+            }
+        }
+        return loaded;
+    }
+
+    private Segment load(long number) {
+        long low = number * segmentSpan;
+        long high = low + segmentSpan - 1;
+        long[] primes = new long[64];
+        int count = 0;
+        PrimitiveIterator.OfLong iterator = file.iterator(low, high);
+        while (iterator.hasNext()) {
+            if (count == primes.length) {
+                primes = Arrays.copyOf(primes, count * 2);
+            }
+            primes[count++] = iterator.nextLong();
+        }
+        return new Segment(number, low == 0 ? 0 : file.rank(low - 1), Arrays.copyOf(primes, count));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getCachedBytes() {
+        synchronized (cache) {
+            return cachedBytes;
+        }
+    }
+
+    public int getCachedSegments() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getSegmentSpan() {
+        return segmentSpan;
+    }
+
+    public long getMaxCacheBytes() {
+        synchronized (cache) {
+            return maxCacheBytes;
+        }
+    }
+
+    /**
+     * Takes effect from the next load on.
+     */
+    public void setMaxCacheBytes(long maxCacheBytes) {
+        synchronized (cache) {
+            this.maxCacheBytes = maxCacheBytes;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (cache) {
+            cache.clear();
+            cacheByIndex.clear();
+            cachedBytes = 0;
+        }
+        file.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d segments cached (%d bytes), %d hits, %d misses, %d evictions",
+                getCachedSegments(), getCachedBytes(), getHits(), getMisses(), getEvictions());
+    }
+
+    private static class Segment {
+        private final long number;
+        private final long firstIndex;
+        private final long[] primes;
+
+        private Segment(long number, long firstIndex, long[] primes) {
+            this.number = number;
+            this.firstIndex = firstIndex;
+            this.primes = primes;
+        }
+
+        private long bytes() {
+            return SEGMENT_OVERHEAD_BYTES + 8L * primes.length;
+        }
+
+        /**
+         * @return the position of the first prime at or above value
+         */
+        private int indexOf(long value) {
+            int position = Arrays.binarySearch(primes, value);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+
+/**
+ * Consumes committed batches one at a time. Requesting one batch per batch consumed is what applies the
+ * backpressure: a slow sink fills its buffer in the publisher, which then holds up committing new ranges.
+ */
+public abstract class PrimeSink implements Flow.Subscriber<PrimeBatch> {
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private Flow.Subscription subscription;
+    private volatile Throwable error = null;
+
+    protected abstract void accept(PrimeBatch batch) throws Exception;
+
+    /**
+     * Called once after the last batch, also when the pipeline failed.
+     */
+    protected void close() throws Exception {
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(PrimeBatch batch) {
+        try {
+            accept(batch);
+        } catch (Exception e) {
+            System.out.println(getClass().getSimpleName() + " failed, it gets no more primes: " + e.getMessage());
+            subscription.cancel();
+            onError(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        finish();
+    }
+
+    @Override
+    public void onComplete() {
+        finish();
+    }
+
+    private void finish() {
+        if (completed.getCount() == 0) {
+            return;
+        }
+        try {
+            close();
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        } finally {
+            completed.countDown();
+        }
+    }
+
+    /**
+     * Waits until every published batch has been consumed and the sink is closed.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        completed.await();
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return whether the sink keeps the only copy of the primes the list doesn't retain, a run stops when it fails
+     */
+    public boolean isDurable() {
+        return false;
+    }
+}
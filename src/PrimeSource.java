@@ -0,0 +1,22 @@
+import java.util.PrimitiveIterator;
+
+/**
+ * Read access to an ascending sequence of odd primes inside the long range.
+ */
+public interface PrimeSource {
+    long size();
+
+    long get(long index);
+
+    /**
+     * @return the number of primes smaller than or equal to value
+     */
+    long rank(long value);
+
+    boolean contains(long value);
+
+    /**
+     * @return an ascending iterator over the primes p with from &lt;= p &lt;= to
+     */
+    PrimitiveIterator.OfLong iterator(long from, long to);
+}
@@ -1,76 +1,221 @@
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.Set;
-import java.util.TreeSet;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 public class PrimeStorage {
     private static String DIRECTORY_NAME = "./primes";
     private static String FILE_EXTENSION = ".prime";
+    private static String BINARY_FILE_EXTENSION = ".pbin";
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+    static final long FIRST_ODD_PRIME = 3;
+    private static long segmentSpan = PrimeSegmentStore.DEFAULT_SEGMENT_SPAN;
+    private static long segmentCacheBytes = PrimeSegmentStore.DEFAULT_CACHE_BYTES;
 
     public static PrimeResult get() {
-        TreeSet<BigDecimal> result = new TreeSet<>();
-        BigDecimal highestNumber = new BigDecimal(3);
+        PrimeList result = new PrimeList();
+        BigDecimal highestNumber = BigDecimal.valueOf(FIRST_ODD_PRIME);
         try {
             File primesDirectory = new File(DIRECTORY_NAME);
             if (!primesDirectory.exists()) {
                 //noinspection ResultOfMethodCallIgnored
                 primesDirectory.mkdir();
             }
-            File[] files = primesDirectory.listFiles(file -> file.getName().endsWith(FILE_EXTENSION));
+            File highestFile = null;
+            File[] files = primesDirectory.listFiles(file -> file.getName().endsWith(FILE_EXTENSION)
+                    || file.getName().endsWith(BINARY_FILE_EXTENSION));
             //noinspection ConstantConditions
             for (File file : files) {
-                String fileName = file.getName();
-                BigDecimal filenameAsBigDecimal = new BigDecimal(
-                        fileName.substring(0, fileName.length() - FILE_EXTENSION.length()));
-                if (highestNumber.compareTo(filenameAsBigDecimal) < 0) {
+                BigDecimal filenameAsBigDecimal = getMaxGenerated(file);
+                //on a tie the binary file wins, it is the faster one to load
+                int comparison = highestNumber.compareTo(filenameAsBigDecimal);
+                if (comparison < 0 || (comparison == 0 && isBinary(file))) {
                     highestNumber = filenameAsBigDecimal;
+                    highestFile = file;
                 }
             }
-            BufferedReader br = new BufferedReader(
-                    new FileReader(DIRECTORY_NAME + "/" + highestNumber.toString() + FILE_EXTENSION));
-            String line;
-            while ((line = br.readLine()) != null) {
-                result.add(new BigDecimal(line));
+            if (highestFile != null && isBinary(highestFile)) {
+                //the mapping stays open for as long as the primes are used, decoded ranges are cached
+                PrimeFile primeFile = PrimeFile.open(highestFile);
+                result = new PrimeList(new PrimeSegmentStore(primeFile, segmentSpan, segmentCacheBytes));
+                highestNumber = BigDecimal.valueOf(primeFile.getMaxGenerated());
+            } else if (highestFile != null) {
+                result = ParallelPrimeIO.readText(highestFile);
             }
         } catch (Exception e) {
-            result.add(new BigDecimal(3));
-        }
-        if (result.contains(new BigDecimal(2))) {
-            result.remove(new BigDecimal(2));
+            System.out.println(e.getMessage());
+            result = new PrimeList();
+            highestNumber = BigDecimal.valueOf(FIRST_ODD_PRIME);
         }
-        if (!result.contains(new BigDecimal(3))) {
-            result.remove(new BigDecimal(3));
+        if (result.isEmpty()) {
+            result.add(FIRST_ODD_PRIME);
         }
         return new PrimeResult(highestNumber, result);
     }
 
+    public static String getDirectory() {
+        return DIRECTORY_NAME;
+    }
+
+    public static void setDirectory(String directoryName) {
+        DIRECTORY_NAME = directoryName;
+    }
+
+    public static long getSegmentSpan() {
+        return segmentSpan;
+    }
+
+    public static void setSegmentSpan(long segmentSpan) {
+        PrimeStorage.segmentSpan = segmentSpan;
+    }
+
+    public static long getSegmentCacheBytes() {
+        return segmentCacheBytes;
+    }
+
+    public static void setSegmentCacheBytes(long segmentCacheBytes) {
+        PrimeStorage.segmentCacheBytes = segmentCacheBytes;
+    }
+
     public static void save(PrimeResult primeResult) {
-        Set<BigDecimal> primes = primeResult.getAllPrimes();
-        if (!primes.contains(new BigDecimal(2))) {
-            primes.add(new BigDecimal(2));
+        PrimeList primes = primeResult.getAllPrimes();
+        if (primes.getDroppedPrimes() > 0) {
+            System.out.println("not saved, primes above " + primes.getRetentionLimit()
+                    + " weren't retained in memory, only the log holds them.");
+            return;
         }
-        String fileName = DIRECTORY_NAME + "/" + primeResult.getMaxGenerated() + FILE_EXTENSION;
+        //the binary format only covers the long range, anything beyond it stays in the text format
+        if (primes.getLargePrimes().isEmpty() && primeResult.getMaxGenerated().compareTo(LONG_MAX) <= 0) {
+            saveBinary(primeResult);
+        } else {
+            saveText(primeResult);
+        }
+    }
+
+    private static void saveBinary(PrimeResult primeResult) {
+        File file = getBinaryFile(primeResult.getMaxGenerated().longValueExact());
+        File temporaryFile = new File(file.getPath() + ".tmp");
         try {
-            File file = new File(fileName);
-            //noinspection ResultOfMethodCallIgnored
-            file.createNewFile();
+            ParallelPrimeIO.writeBinary(temporaryFile, primeResult.getAllPrimes(),
+                    primeResult.getMaxGenerated().longValueExact());
         } catch (Exception e) {
             System.out.println(e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+            return;
         }
         try {
-            BufferedWriter bw = new BufferedWriter(
-                    new FileWriter(fileName));
-            boolean written = false;
-            for (BigDecimal prime : primes) {
-                if (written) {
-                    bw.newLine();
+            replace(temporaryFile, file);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    static File getLogDirectory() {
+        return new File(DIRECTORY_NAME + "/log");
+    }
+
+    static File getBinaryFile(long maxGenerated) {
+        return new File(DIRECTORY_NAME + "/" + maxGenerated + BINARY_FILE_EXTENSION);
+    }
+
+    /**
+     * @return the binary file with the highest maxGenerated, null if there is none
+     */
+    static File getLatestBinaryFile() {
+        File[] files = new File(DIRECTORY_NAME).listFiles(PrimeStorage::isBinary);
+        File latest = null;
+        if (files != null) {
+            for (File file : files) {
+                if (latest == null || getMaxGenerated(latest).compareTo(getMaxGenerated(file)) < 0) {
+                    latest = file;
                 }
-                bw.write(prime.toString());
-                written = true;
             }
-            bw.close();
+        }
+        return latest;
+    }
+
+    static void replace(File temporaryFile, File file) throws IOException {
+        //a previous file with the same name may still be mapped, so it is replaced rather than overwritten
+        Files.move(temporaryFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Forces a rename in the directory to disk, so it survives a crash like the file it renamed.
+     */
+    private static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //some platforms, Windows among them, can't open a directory, the rename is left to the file system there
+        }
+    }
+
+    private static void saveText(PrimeResult primeResult) {
+        PrimeList primes = primeResult.getAllPrimes();
+        File file = new File(DIRECTORY_NAME + "/" + primeResult.getMaxGenerated() + FILE_EXTENSION);
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            ParallelPrimeIO.writeText(temporaryFile, primes, primes.getLargePrimes());
+            replace(temporaryFile, file);
         } catch (Exception e) {
             System.out.println(e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * Converts every text file inside the long range that has no binary counterpart yet.
+     */
+    public static void convertTextFiles() {
+        File[] files = new File(DIRECTORY_NAME).listFiles(file -> file.getName().endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return;
         }
+        for (File file : files) {
+            BigDecimal maxGenerated = getMaxGenerated(file);
+            if (maxGenerated.compareTo(LONG_MAX) > 0) {
+                continue;
+            }
+            File binaryFile = getBinaryFile(maxGenerated.longValueExact());
+            if (binaryFile.exists()) {
+                continue;
+            }
+            File temporaryFile = new File(binaryFile.getPath() + ".tmp");
+            try {
+                PrimeList primes = ParallelPrimeIO.readText(file);
+                if (!primes.getLargePrimes().isEmpty()) {
+                    throw new IOException("primes beyond the long range");
+                }
+                ParallelPrimeIO.writeBinary(temporaryFile, primes, maxGenerated.longValueExact());
+            } catch (Exception e) {
+                System.out.println("could not convert " + file.getName() + ": " + e.getMessage());
+                //noinspection ResultOfMethodCallIgnored
+                temporaryFile.delete();
+                continue;
+            }
+            try {
+                Files.move(temporaryFile.toPath(), binaryFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("converted " + file.getName() + " to " + binaryFile.getName());
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isBinary(File file) {
+        return file.getName().endsWith(BINARY_FILE_EXTENSION);
+    }
+
+    private static BigDecimal getMaxGenerated(File file) {
+        String fileName = file.getName();
+        String extension = isBinary(file) ? BINARY_FILE_EXTENSION : FILE_EXTENSION;
+        return new BigDecimal(fileName.substring(0, fileName.length() - extension.length()));
     }
 }
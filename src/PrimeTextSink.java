@@ -0,0 +1,51 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes every prime on a line of its own, to stdout or to a file.
+ */
+public class PrimeTextSink extends PrimeSink {
+    private final Writer writer;
+    private final boolean closeStream;
+
+    public PrimeTextSink(OutputStream out, boolean closeStream) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 1 << 16);
+        this.closeStream = closeStream;
+    }
+
+    public static PrimeTextSink toStandardOut() {
+        return new PrimeTextSink(System.out, false);
+    }
+
+    public static PrimeTextSink toFile(String fileName, boolean append) throws IOException {
+        return new PrimeTextSink(new FileOutputStream(fileName, append), true);
+    }
+
+    @Override
+    protected void accept(PrimeBatch batch) throws IOException {
+        long[] primes = batch.getPrimes();
+        for (int i = 0; i < batch.getCount(); ++i) {
+            writer.write(Long.toString(primes[i]));
+            writer.write('\n');
+        }
+        for (BigDecimal prime : batch.getLargePrimes()) {
+            writer.write(prime.toPlainString());
+            writer.write('\n');
+        }
+    }
+
+    @Override
+    protected void close() throws IOException {
+        if (closeStream) {
+            writer.close();
+        } else {
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Leases ranges to {@link RangeWorker}s over a socket and merges their results in range order.
+ * A lease that isn't completed within the lease timeout, or whose worker disconnects, goes to the next worker
+ * asking for work; late results of a reassigned lease are dropped.
+ * <p>
+ * Protocol, big-endian: the worker opens with {@link #PROTOCOL_MAGIC}, then repeatedly sends
+ * {@link #REQUEST_LEASE} and gets {@link #LEASE} (id, from, to, bound of the sieving primes), {@link #WAIT}
+ * (millis) or {@link #STOP}. A finished lease is sent back as {@link #RESULT} (id, duration in nanoseconds,
+ * count, then the primes as varints: the first one whole, every next one as half the gap).
+ */
+public class RangeCoordinator {
+    public static final int DEFAULT_PORT = 7070;
+
+    static final int PROTOCOL_MAGIC = 0x50524e47;//"PRNG"
+    static final byte REQUEST_LEASE = 1;
+    static final byte RESULT = 2;
+    static final byte LEASE = 1;
+    static final byte WAIT = 2;
+    static final byte STOP = 3;
+
+    private static final String ENGINE_NAME = "distributed " + SegmentedSieveGenerator.ENGINE_NAME;
+    private static final BigDecimal SIEVE_LIMIT = BigDecimal.valueOf(SegmentedSieveGenerator.MAX_VALUE);
+    private static final long WAIT_MILLIS = 50;
+    //leased or finished ranges waiting for their turn to be merged, bounds the results held in memory
+    private static final int LEASES_AHEAD = 256;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final RangeScheduler scheduler;
+    private final Deque<Lease> leases = new ArrayDeque<>();
+    private final TimingRingBuffer timings = new TimingRingBuffer(10000);
+
+    private volatile PrimeResult calculatedPrimes;
+    private PrimeLog primeLog = null;
+    private long retentionLimit = Long.MAX_VALUE;
+    private long leaseTimeoutMillis = 30000;
+    private long nextLeaseId = 1;
+    private volatile boolean running = false;
+
+    public RangeCoordinator(PrimeResult calculatedPrimes, int port) throws IOException {
+        if (calculatedPrimes.getMaxGenerated().compareTo(SIEVE_LIMIT) >= 0) {
+            throw new IllegalStateException("distributed generation only covers the sieve range");
+        }
+        this.calculatedPrimes = calculatedPrimes;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        //workers ask per range, so ranges are sized for a few seconds of work instead of a few milliseconds
+        this.scheduler = new RangeScheduler(calculatedPrimes.getMaxGenerated().add(new BigDecimal(2)),
+                new BigDecimal(1 << 20), new BigDecimal(1 << 28));
+    }
+
+    public void startCoordinating() {
+        calculatedPrimes.getAllPrimes().setRetentionLimit(retentionLimit);
+        running = true;
+        connections.submit(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    connections.submit(() -> serve(socket));
+                } catch (SocketException e) {
+                    return;//closed by stopCoordinating
+                } catch (IOException e) {
+                    System.out.println("could not accept worker: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands out no new leases, waits for leases still being worked on, then stops the workers.
+     */
+    public void stopCoordinating(Runnable runnable) {
+        if (!running) {
+            throw new IllegalStateException("stopping when not running...");
+        }
+        running = false;
+        synchronized (this) {
+            try {
+                while (hasActiveLeases()) {
+                    wait(WAIT_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("something went wrong while stopping...");
+            }
+            //whatever is left can't be merged anymore, there is a gap before it
+            leases.clear();
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        connections.shutdown();
+        runnable.run();
+    }
+
+    private void serve(Socket socket) {
+        Object worker = new Object();
+        try (Socket connection = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            if (in.readInt() != PROTOCOL_MAGIC) {
+                throw new IOException("not a range worker: " + connection.getRemoteSocketAddress());
+            }
+            while (true) {
+                byte type = in.readByte();
+                if (type == RESULT) {
+                    readResult(in);
+                    continue;
+                }
+                if (type != REQUEST_LEASE) {
+                    throw new IOException("unknown message " + type + " from " + connection.getRemoteSocketAddress());
+                }
+                long[] lease = nextLease(worker);
+                if (lease != null) {
+                    out.writeByte(LEASE);
+                    for (long value : lease) {
+                        out.writeLong(value);
+                    }
+                } else if (running) {
+                    out.writeByte(WAIT);
+                    out.writeLong(WAIT_MILLIS);
+                } else {
+                    out.writeByte(STOP);
+                    out.flush();
+                    return;
+                }
+                out.flush();
+            }
+        } catch (EOFException e) {
+            System.out.println("worker disconnected.");
+        } catch (IOException e) {
+            System.out.println("worker lost: " + e.getMessage());
+        } finally {
+            release(worker);
+        }
+    }
+
+    /**
+     * @return {id, from, to, bound of the sieving primes} of the lease for this worker, null when there is none
+     */
+    private synchronized long[] nextLease(Object worker) {
+        if (!running) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Lease lease = null;
+        for (Lease candidate : leases) {
+            if (candidate.primes == null && (candidate.worker == null || candidate.deadline < now)) {
+                lease = candidate;
+                break;
+            }
+        }
+        if (lease == null && leases.size() < LEASES_AHEAD) {
+            //workers sieve their own base primes, so ranges don't wait for the merged frontier
+            BigDecimal[] range = scheduler.nextRange(SIEVE_LIMIT, ENGINE_NAME);
+            if (range != null) {
+                lease = new Lease(range[0].longValueExact(), range[1].longValueExact());
+                leases.addLast(lease);
+            }
+        }
+        if (lease == null) {
+            return null;
+        }
+        lease.id = nextLeaseId++;
+        lease.worker = worker;
+        lease.deadline = now + leaseTimeoutMillis;
+        return new long[]{lease.id, lease.from, lease.to, (long) Math.sqrt((double) lease.to) + 1};
+    }
+
+    private void readResult(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        long durationInNanoSeconds = in.readLong();
+        int count = in.readInt();
+        long[] primes = new long[count];
+        long last = 0;
+        for (int i = 0; i < count; ++i) {
+            long varint = readVarint(in);
+            last = i == 0 ? varint : last + (varint << 1);
+            primes[i] = last;
+        }
+        complete(id, durationInNanoSeconds, primes);
+    }
+
+    private synchronized void complete(long id, long durationInNanoSeconds, long[] primes) {
+        Lease lease = null;
+        for (Lease candidate : leases) {
+            if (candidate.id == id && candidate.primes == null) {
+                lease = candidate;
+                break;
+            }
+        }
+        if (lease == null) {
+            return;//reassigned in the meantime, the other worker's result counts
+        }
+        lease.primes = primes;
+        lease.durationInNanoSeconds = durationInNanoSeconds;
+        merge();
+        notifyAll();
+    }
+
+    /**
+     * Commits finished leases from the front, so the frontier only moves over contiguous results.
+     */
+    private void merge() {
+        while (!leases.isEmpty() && leases.peekFirst().primes != null) {
+            Lease lease = leases.pollFirst();
+            PrimeList primes = calculatedPrimes.getAllPrimes();
+            primes.addAll(lease.primes, lease.primes.length);
+            PrimeGeneratorTiming timing = new PrimeGeneratorTiming(ENGINE_NAME, lease.durationInNanoSeconds,
+                    BigDecimal.valueOf(lease.from), BigDecimal.valueOf(lease.to), lease.primes.length);
+            timings.add(timing);
+            scheduler.record(timing);
+            calculatedPrimes = new PrimeResult(BigDecimal.valueOf(lease.to), primes);
+            if (primeLog != null) {
+                try {
+                    primeLog.append(lease.to, lease.primes, lease.primes.length);
+                } catch (Exception e) {
+                    System.out.println("could not log range: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the unfinished leases of a lost worker available right away instead of after the timeout.
+     */
+    private synchronized void release(Object worker) {
+        for (Lease lease : leases) {
+            if (lease.worker == worker && lease.primes == null) {
+                lease.worker = null;
+            }
+        }
+        notifyAll();
+    }
+
+    private boolean hasActiveLeases() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : leases) {
+            if (lease.primes == null && lease.worker != null && lease.deadline >= now) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int next = in.read();
+            if (next < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    public PrimeResult getResult() {
+        return calculatedPrimes;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public PrimeLog getPrimeLog() {
+        return primeLog;
+    }
+
+    public void setPrimeLog(PrimeLog primeLog) {
+        this.primeLog = primeLog;
+    }
+
+    public long getRetentionLimit() {
+        return retentionLimit;
+    }
+
+    /**
+     * Keeps only the primes up to the limit in memory, the rest only goes to the log.
+     */
+    public void setRetentionLimit(long retentionLimit) {
+        this.retentionLimit = retentionLimit;
+    }
+
+    public long getLeaseTimeoutMillis() {
+        return leaseTimeoutMillis;
+    }
+
+    public synchronized void setLeaseTimeoutMillis(long leaseTimeoutMillis) {
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+    }
+
+    public RangeScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public Collection<PrimeGeneratorTiming> getTimings() {
+        return timings.snapshot();
+    }
+
+    private static class Lease {
+        private final long from;
+        private final long to;
+        private long id;
+        private Object worker;
+        private long deadline;
+        private long[] primes;
+        private long durationInNanoSeconds;
+
+        private Lease(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
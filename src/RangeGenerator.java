@@ -0,0 +1,20 @@
+public interface RangeGenerator {
+    void generate();
+
+    /**
+     * Makes {@link #generate()} stop at the next segment boundary, also when it hasn't started yet. The primes of
+     * the finished segments are kept: the batch and timings then end at the last number that was looked at.
+     */
+    void cancel();
+
+    GeneratorState getGeneratorState();
+
+    void addPrimesTo(PrimeList primes);
+
+    /**
+     * @return the primes found, in ascending order, to be published once the range is committed
+     */
+    PrimeBatch getBatch();
+
+    PrimeGeneratorTiming getTimings();
+}
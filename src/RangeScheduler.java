@@ -0,0 +1,116 @@
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plans consecutive odd-aligned ranges, sized from the measured throughput of each engine.
+ * Ranges end just before a multiple of the wheel modulus, so each one covers whole turns of the wheel.
+ */
+public class RangeScheduler {
+    //long enough to amortise scheduling, short enough to keep every core busy until a stop
+    static final double TARGET_RANGE_NANOS = 50_000_000;
+    private static final double SMOOTHING = 0.25;
+    private static final BigDecimal TWO = new BigDecimal(2);
+
+    private BigDecimal next;
+    private BigDecimal minRangeSize;
+    private BigDecimal maxRangeSize;
+    private Wheel wheel = Wheel.ODD;
+    private final Map<String, Double> numbersPerNanoSecond = new HashMap<>();
+
+    public RangeScheduler(BigDecimal next, BigDecimal minRangeSize, BigDecimal maxRangeSize) {
+        if (next.remainder(TWO).signum() == 0) {
+            next = next.add(BigDecimal.ONE);
+        }
+        this.next = next;
+        this.minRangeSize = minRangeSize;
+        this.maxRangeSize = maxRangeSize;
+    }
+
+    /**
+     * @return the next range {from, to}, both odd and to not past limit, or null when next lies past limit
+     */
+    public synchronized BigDecimal[] nextRange(BigDecimal limit, String engine) {
+        return nextRange(limit, engine, maxRangeSize);
+    }
+
+    /**
+     * Like {@link #nextRange(BigDecimal, String)}, with the range size capped at maxSize for this range only.
+     */
+    public synchronized BigDecimal[] nextRange(BigDecimal limit, String engine, BigDecimal maxSize) {
+        if (next.compareTo(limit) > 0) {
+            return null;
+        }
+        BigDecimal size = BigDecimalMath.min(getRangeSize(engine), maxSize);
+        BigDecimal to = next.add(size);
+        //round down to the end of a turn, or up when the range would be shorter than one
+        BigDecimal modulus = BigDecimal.valueOf(wheel.getModulus());
+        BigDecimal turnEnd = to.subtract(to.add(BigDecimal.ONE).remainder(modulus));
+        to = BigDecimalMath.min(turnEnd.compareTo(next) >= 0 ? turnEnd : turnEnd.add(modulus), limit);
+        if (to.remainder(TWO).signum() == 0) {
+            to = to.subtract(BigDecimal.ONE);
+        }
+        BigDecimal[] range = {next, to};
+        next = to.add(TWO);
+        return range;
+    }
+
+    /**
+     * @return the range size that should take about {@link #TARGET_RANGE_NANOS} with the given engine
+     */
+    public synchronized BigDecimal getRangeSize(String engine) {
+        Double throughput = numbersPerNanoSecond.get(engine);
+        if (throughput == null) {
+            return minRangeSize;
+        }
+        BigDecimal size = BigDecimal.valueOf((long) (throughput * TARGET_RANGE_NANOS));
+        return BigDecimalMath.min(maxRangeSize, size.max(minRangeSize));
+    }
+
+    /**
+     * @return the smoothed throughput of the engine, 0 before any of its ranges was recorded
+     */
+    public synchronized double getNumbersPerNanoSecond(String engine) {
+        Double throughput = numbersPerNanoSecond.get(engine);
+        return throughput == null ? 0 : throughput;
+    }
+
+    public synchronized void record(PrimeGeneratorTiming timing) {
+        if (timing.getDurationInNanoSeconds() <= 0) {
+            return;
+        }
+        double measured = timing.getEndSearch().subtract(timing.getBeginSearch()).doubleValue()
+                / timing.getDurationInNanoSeconds();
+        Double previous = numbersPerNanoSecond.get(timing.getEngine());
+        numbersPerNanoSecond.put(timing.getEngine(),
+                previous == null ? measured : previous + SMOOTHING * (measured - previous));
+    }
+
+    public synchronized BigDecimal getNext() {
+        return next;
+    }
+
+    public synchronized Wheel getWheel() {
+        return wheel;
+    }
+
+    public synchronized void setWheel(Wheel wheel) {
+        this.wheel = wheel;
+    }
+
+    public synchronized BigDecimal getMinRangeSize() {
+        return minRangeSize;
+    }
+
+    public synchronized void setMinRangeSize(BigDecimal minRangeSize) {
+        this.minRangeSize = minRangeSize;
+    }
+
+    public synchronized BigDecimal getMaxRangeSize() {
+        return maxRangeSize;
+    }
+
+    public synchronized void setMaxRangeSize(BigDecimal maxRangeSize) {
+        this.maxRangeSize = maxRangeSize;
+    }
+}
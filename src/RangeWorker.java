@@ -0,0 +1,83 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Generates the ranges a {@link RangeCoordinator} leases to it, until the coordinator says stop.
+ * The sieving primes are computed locally, so nothing but ranges and results go over the wire.
+ */
+public class RangeWorker implements Runnable {
+    private final String host;
+    private final int port;
+
+    private long[] sievingPrimes = new long[0];
+    private long sievingPrimesBound = 0;
+    private long rangesGenerated = 0;
+
+    public RangeWorker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public void run() {
+        try (Socket socket = new Socket(host, port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+            out.writeInt(RangeCoordinator.PROTOCOL_MAGIC);
+            while (true) {
+                out.writeByte(RangeCoordinator.REQUEST_LEASE);
+                out.flush();
+                byte reply = in.readByte();
+                if (reply == RangeCoordinator.STOP) {
+                    return;
+                } else if (reply == RangeCoordinator.WAIT) {
+                    Thread.sleep(in.readLong());
+                } else if (reply == RangeCoordinator.LEASE) {
+                    long id = in.readLong();
+                    long from = in.readLong();
+                    long to = in.readLong();
+                    long bound = in.readLong();
+                    SegmentedSieveGenerator generator = new SegmentedSieveGenerator(from, to, getSievingPrimes(bound));
+                    generator.generate();
+                    sendResult(out, id, generator);
+                    ++rangesGenerated;
+                } else {
+                    throw new IOException("unknown reply " + reply);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("coordinator lost: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendResult(DataOutputStream out, long id, SegmentedSieveGenerator generator) throws IOException {
+        PrimeGeneratorTiming timing = generator.getTimings();
+        PrimeBatch batch = generator.getBatch();
+        long[] primes = batch.getPrimes();
+        out.writeByte(RangeCoordinator.RESULT);
+        out.writeLong(id);
+        out.writeLong(timing.getDurationInNanoSeconds());
+        out.writeInt(batch.getCount());
+        for (int i = 0; i < batch.getCount(); ++i) {
+            PrimeFileWriter.writeVarint(out, i == 0 ? primes[i] : (primes[i] - primes[i - 1]) >>> 1);
+        }
+    }
+
+    private long[] getSievingPrimes(long bound) {
+        if (bound > sievingPrimesBound) {
+            //fetch ahead, so the sieve only grows once in a while
+            sievingPrimesBound = Math.max(bound, sievingPrimesBound * 2);
+            sievingPrimes = SegmentedSieveGenerator.oddPrimesUpTo(sievingPrimesBound);
+        }
+        return sievingPrimes;
+    }
+
+    public long getRangesGenerated() {
+        return rangesGenerated;
+    }
+}
@@ -0,0 +1,180 @@
+import java.math.BigDecimal;
+
+/**
+ * Decides when a run is over: once a number is reached, after a duration, at a count of primes or before the primes
+ * in memory outgrow a heap budget, whichever comes first. Targets that aren't set never end the run.
+ */
+public class RunPolicy {
+    public static final long DEFAULT_DURATION_NANOS = 60_000_000_000L;
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private BigDecimal untilNumber = null;
+    private long durationNanos = NO_LIMIT;
+    private long primeCount = NO_LIMIT;
+    private long heapBytes = NO_LIMIT;
+    private volatile long startTime = 0;
+
+    /**
+     * @return the policy Main used to hard-code: stop after a minute
+     */
+    public static RunPolicy forDefaultDuration() {
+        RunPolicy runPolicy = new RunPolicy();
+        runPolicy.setDurationNanos(DEFAULT_DURATION_NANOS);
+        return runPolicy;
+    }
+
+    /**
+     * Starts the clock for the duration target.
+     */
+    public void start() {
+        startTime = System.nanoTime();
+    }
+
+    public boolean hasTarget() {
+        return untilNumber != null || durationNanos != NO_LIMIT || primeCount != NO_LIMIT || heapBytes != NO_LIMIT;
+    }
+
+    public BigDecimal getUntilNumber() {
+        return untilNumber;
+    }
+
+    /**
+     * Generates every prime up to and including untilNumber, ranges are cut so none passes it.
+     */
+    public void setUntilNumber(BigDecimal untilNumber) {
+        this.untilNumber = untilNumber;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public void setDurationNanos(long durationNanos) {
+        this.durationNanos = durationNanos;
+    }
+
+    public long getPrimeCount() {
+        return primeCount;
+    }
+
+    /**
+     * Stops at exactly this many primes, 2 included. The range holding the last one is committed up to it.
+     */
+    public void setPrimeCount(long primeCount) {
+        this.primeCount = primeCount;
+    }
+
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Stops before the primes kept in memory take more than this, see {@link PrimeList#estimateHeapBytes()}.
+     */
+    public void setHeapBytes(long heapBytes) {
+        this.heapBytes = heapBytes;
+    }
+
+    /**
+     * @return the time left before the duration runs out, Long.MAX_VALUE without a duration
+     */
+    public long getRemainingNanos() {
+        if (durationNanos == NO_LIMIT) {
+            return NO_LIMIT;
+        }
+        return Math.max(0, durationNanos - (System.nanoTime() - startTime));
+    }
+
+    /**
+     * @return how many more primes may be committed before the prime count target is hit
+     */
+    public long getPrimesAllowed(PrimeList primes) {
+        if (primeCount == NO_LIMIT) {
+            return NO_LIMIT;
+        }
+        return Math.max(0, primeCount - countPrimes(primes));
+    }
+
+    /**
+     * @return whether the primes kept in memory stay within the heap budget with that many more of them
+     */
+    public boolean fitsHeap(PrimeList primes, long additionalPrimes) {
+        return heapBytes == NO_LIMIT || primes.estimateHeapBytes(additionalPrimes) <= heapBytes;
+    }
+
+    public boolean isReached(PrimeResult result) {
+        PrimeList primes = result.getAllPrimes();
+        //the ranges end on odd numbers, an even target is reached one before it
+        return (untilNumber != null && result.getMaxGenerated().compareTo(untilNumber.subtract(BigDecimal.ONE)) >= 0)
+                || getRemainingNanos() == 0
+                || getPrimesAllowed(primes) == 0
+                || !fitsHeap(primes, 1);
+    }
+
+    /**
+     * @param numbersPerNanoSecond the measured throughput, 0 when not known yet
+     * @return the expected time until the first target is reached, Long.MAX_VALUE when it can't be told
+     */
+    public long projectRemainingNanos(PrimeResult result, double numbersPerNanoSecond) {
+        long remaining = getRemainingNanos();
+        if (numbersPerNanoSecond <= 0) {
+            return remaining;
+        }
+        BigDecimal maxGenerated = result.getMaxGenerated();
+        if (untilNumber != null) {
+            double numbersLeft = Math.max(0, untilNumber.subtract(maxGenerated).doubleValue());
+            remaining = Math.min(remaining, (long) Math.min(NO_LIMIT, numbersLeft / numbersPerNanoSecond));
+        }
+        if (primeCount != NO_LIMIT) {
+            //around x about one number in ln(x) is prime
+            double numbersLeft = getPrimesAllowed(result.getAllPrimes()) * Math.log(Math.max(2, maxGenerated.doubleValue()));
+            remaining = Math.min(remaining, (long) Math.min(NO_LIMIT, numbersLeft / numbersPerNanoSecond));
+        }
+        return remaining;
+    }
+
+    /**
+     * @return the number of primes found so far, also those no longer kept in memory, and 2
+     */
+    static long countPrimes(PrimeList primes) {
+        return 1 + primes.size() + primes.getDroppedPrimes() + primes.getLargePrimes().size();
+    }
+
+    /**
+     * Reads durations like 90s, 10m, 2h or 500ms, a plain number is in seconds.
+     */
+    public static long parseDurationNanos(String value) {
+        String number = value;
+        long unit = 1_000_000_000L;
+        if (value.endsWith("ms")) {
+            number = value.substring(0, value.length() - 2);
+            unit = 1_000_000L;
+        } else if (value.endsWith("s")) {
+            number = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("m")) {
+            number = value.substring(0, value.length() - 1);
+            unit = 60_000_000_000L;
+        } else if (value.endsWith("h")) {
+            number = value.substring(0, value.length() - 1);
+            unit = 3_600_000_000_000L;
+        }
+        return new BigDecimal(number).multiply(BigDecimal.valueOf(unit)).longValue();
+    }
+
+    /**
+     * Reads sizes like 512m or 2g, a plain number is in megabytes.
+     */
+    public static long parseBytes(String value) {
+        String number = value.toLowerCase();
+        long unit = 1L << 20;
+        if (number.endsWith("k")) {
+            unit = 1L << 10;
+        } else if (number.endsWith("g")) {
+            unit = 1L << 30;
+        }
+        if (Character.isLetter(number.charAt(number.length() - 1))) {
+            number = number.substring(0, number.length() - 1);
+        }
+        return new BigDecimal(number).multiply(BigDecimal.valueOf(unit)).longValue();
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.Arrays;
+
+/**
+ * Crosses off the multiples of every sieving prime one bit at a time.
+ */
+public class ScalarSieveKernel implements SieveKernel {
+    public static final ScalarSieveKernel INSTANCE = new ScalarSieveKernel();
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void sieve(long[] segment, long low, int bits, long[] sievingPrimes) {
+        Arrays.fill(segment, 0, (bits + 63) >>> 6, 0L);
+        if (low == 1) {
+            segment[0] |= 1L;//1 is not a prime
+        }
+        crossOff(segment, low, bits, sievingPrimes, 0);
+    }
+
+    /**
+     * Crosses off the multiples of the sieving primes from the one at index first on, starting at their squares.
+     */
+    static void crossOff(long[] segment, long low, int bits, long[] sievingPrimes, int first) {
+        long high = low + 2L * (bits - 1);
+        for (int i = first; i < sievingPrimes.length; ++i) {
+            long prime = sievingPrimes[i];
+            if (prime > high / prime) {
+                break;
+            }
+            long start = prime * prime;
+            if (start < low) {
+                long remainder = low % prime;
+                start = remainder == 0 ? low : low + prime - remainder;
+                if (start % 2 == 0) {
+                    start += prime;
+                }
+            }
+            for (long index = (start - low) >>> 1; index < bits; index += prime) {
+                segment[(int) (index >>> 6)] |= 1L << index;
+            }
+        }
+    }
+}
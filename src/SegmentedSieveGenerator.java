@@ -0,0 +1,150 @@
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+public class SegmentedSieveGenerator implements RangeGenerator {
+    public static final String ENGINE_NAME = "segmented sieve";
+
+    //sieving primes stay below 2^32, this margin keeps every offset calculation inside a long
+    public static final long MAX_VALUE = Long.MAX_VALUE - (1L << 33);
+
+    //one bit per odd number, sized to stay inside the L1 data cache
+    public static final int DEFAULT_SEGMENT_BYTES = 32 * 1024;
+
+    private final long from;
+    //moves down to the last sieved number when cancelled
+    private long to;
+    private final long[] sievingPrimes;
+    private final SieveKernel kernel;
+    private final int segmentBytes;
+    volatile private GeneratorState state = GeneratorState.READY;
+    private volatile boolean cancelled = false;
+
+    private long[] primes = new long[64];
+    private int numberOfPrimes = 0;
+    private long startTime;
+    private long endTime;
+
+    /**
+     * @param sievingPrimes ascending odd primes, containing at least every odd prime up to the square root of to
+     */
+    public SegmentedSieveGenerator(long from, long to, long[] sievingPrimes) {
+        this(from, to, sievingPrimes, PatternSieveKernel.INSTANCE);
+    }
+
+    public SegmentedSieveGenerator(long from, long to, long[] sievingPrimes, SieveKernel kernel) {
+        this(from, to, sievingPrimes, kernel, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * @param segmentBytes the size of the bit array sieved at a time, a positive multiple of 8
+     */
+    public SegmentedSieveGenerator(long from, long to, long[] sievingPrimes, SieveKernel kernel, int segmentBytes) {
+        if (segmentBytes <= 0 || segmentBytes % 8 != 0) {
+            throw new IllegalArgumentException("segments are made of whole longs: " + segmentBytes);
+        }
+        if (to > MAX_VALUE) {
+            throw new IllegalArgumentException("range end outside of the long range: " + to);
+        }
+        if (from % 2 == 0) {
+            from = from + 1;
+        }
+        this.from = from;
+        this.to = to;
+        this.sievingPrimes = sievingPrimes;
+        this.kernel = kernel;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * @return the odd primes up to bound, bootstrapped by sieving with the odd primes up to its square root
+     */
+    public static long[] oddPrimesUpTo(long bound) {
+        if (bound < 9) {
+            return Arrays.stream(new long[]{3, 5, 7}).filter(prime -> prime <= bound).toArray();
+        }
+        SegmentedSieveGenerator generator = new SegmentedSieveGenerator(3, bound,
+                oddPrimesUpTo((long) Math.sqrt((double) bound) + 1));
+        generator.generate();
+        return Arrays.copyOf(generator.primes, generator.numberOfPrimes);
+    }
+
+    public void generate() {
+        state = GeneratorState.WORKING;
+        startTime = System.nanoTime();
+        //small ranges don't need a whole segment
+        long[] segment = new long[(int) Math.min(segmentBytes / 8, Math.max(0, to - from) / 128 + 1)];
+        int segmentBits = segment.length * 64;
+        long low = from;
+        while (low <= to) {
+            if (cancelled) {
+                to = low - 2;
+                break;
+            }
+            int bits = (int) Math.min(segmentBits, (to - low) / 2 + 1);
+            long high = low + 2L * (bits - 1);
+            kernel.sieve(segment, low, bits, sievingPrimes);
+            collectSegment(segment, low, bits);
+            low = high + 2;
+        }
+        endTime = System.nanoTime();
+        state = GeneratorState.DONE;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void collectSegment(long[] segment, long low, int bits) {
+        int words = (bits + 63) >>> 6;
+        if ((bits & 63) != 0) {
+            //the bits past the segment are counted as composites
+            segment[words - 1] |= -1L << bits;
+        }
+        //counted up front, so the primes are added without checking the capacity for every one of them
+        int survivors = 0;
+        for (int word = 0; word < words; ++word) {
+            survivors += Long.bitCount(~segment[word]);
+        }
+        if (numberOfPrimes + survivors > primes.length) {
+            primes = Arrays.copyOf(primes, Math.max(primes.length * 2, numberOfPrimes + survivors));
+        }
+        for (int word = 0; word < words; ++word) {
+            long candidates = ~segment[word];
+            while (candidates != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(candidates);
+                primes[numberOfPrimes++] = low + 2L * index;
+                candidates &= candidates - 1;
+            }
+        }
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public GeneratorState getGeneratorState() {
+        return state;
+    }
+
+    public void addPrimesTo(PrimeList primeList) {
+        if (!GeneratorState.DONE.equals(getGeneratorState())) {
+            throw new IllegalStateException("not done generating");
+        }
+        primeList.addAll(primes, numberOfPrimes);
+    }
+
+    public PrimeBatch getBatch() {
+        if (!GeneratorState.DONE.equals(getGeneratorState())) {
+            throw new IllegalStateException("not done generating");
+        }
+        return new PrimeBatch(BigDecimal.valueOf(from), BigDecimal.valueOf(to), primes, numberOfPrimes);
+    }
+
+    public PrimeGeneratorTiming getTimings() {
+        if (!GeneratorState.DONE.equals(getGeneratorState())) {
+            throw new IllegalStateException("not done generating");
+        }
+        return new PrimeGeneratorTiming(ENGINE_NAME, endTime - startTime,
+                BigDecimal.valueOf(from), BigDecimal.valueOf(to), numberOfPrimes);
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Crosses off the odd composites of one segment of {@link SegmentedSieveGenerator}.
+ */
+public interface SieveKernel {
+    String getName();
+
+    /**
+     * Bit i of the segment stands for low + 2i, a set bit marks a composite. Every bit is set or cleared, so the
+     * segment needn't be cleared beforehand; bits past the segment may end up set.
+     *
+     * @param low odd
+     * @param sievingPrimes ascending odd primes, containing at least every odd prime up to the square root of the
+     *                      last number of the segment
+     */
+    void sieve(long[] segment, long low, int bits, long[] sievingPrimes);
+}
@@ -0,0 +1,41 @@
+/**
+ * Limits how many ranges are generated at once, the limit can change while ranges hold a place. It lets the
+ * {@link AutoTuner} try thread counts within a run, as a running pool can't be resized.
+ */
+public class ThreadLimit {
+    private int limit;
+    private int running = 0;
+
+    public ThreadLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Waits for a place, taken places are never revoked, a lower limit only applies once enough were released.
+     */
+    public synchronized void acquire() {
+        while (running >= limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting to generate", e);
+            }
+        }
+        ++running;
+    }
+
+    public synchronized void release() {
+        --running;
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized void setLimit(int limit) {
+        this.limit = limit;
+        notifyAll();
+    }
+}
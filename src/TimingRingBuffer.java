@@ -0,0 +1,71 @@
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Keeps only the most recent timings, so long runs don't grow without bound.
+ */
+public class TimingRingBuffer extends AbstractCollection<PrimeGeneratorTiming> {
+    private final PrimeGeneratorTiming[] timings;
+    private int next = 0;
+    private int size = 0;
+    private long dropped = 0;
+
+    public TimingRingBuffer(int capacity) {
+        this.timings = new PrimeGeneratorTiming[capacity];
+    }
+
+    @Override
+    public synchronized boolean add(PrimeGeneratorTiming timing) {
+        if (size == timings.length) {
+            ++dropped;
+        } else {
+            ++size;
+        }
+        timings[next] = timing;
+        next = (next + 1) % timings.length;
+        return true;
+    }
+
+    /**
+     * @return a snapshot of the kept timings, oldest first
+     */
+    @Override
+    public Iterator<PrimeGeneratorTiming> iterator() {
+        return snapshot().iterator();
+    }
+
+    public synchronized List<PrimeGeneratorTiming> snapshot() {
+        List<PrimeGeneratorTiming> result = new ArrayList<>(size);
+        int first = (next - size + timings.length) % timings.length;
+        for (int i = 0; i < size; ++i) {
+            result.add(timings[(first + i) % timings.length]);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        Arrays.fill(timings, null);
+        next = 0;
+        size = 0;
+    }
+
+    public int getCapacity() {
+        return timings.length;
+    }
+
+    /**
+     * @return the number of timings overwritten so far
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+}
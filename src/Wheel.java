@@ -0,0 +1,140 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Wheel factorisation: only numbers coprime to the modulus are candidates, the multiples of the base primes
+ * are stepped over without being tested. The base primes themselves are not candidates either.
+ */
+public enum Wheel {
+    ODD(2),
+    MOD_30(2, 3, 5),
+    MOD_210(2, 3, 5, 7),
+    MOD_2310(2, 3, 5, 7, 11);
+
+    public static final Wheel DEFAULT = MOD_210;
+
+    private final long[] basePrimes;
+    private final int modulus;
+    //the residues coprime to the modulus, ascending, and the step from each one to the next
+    private final int[] residues;
+    private final int[] gaps;
+    //index of the first residue at or above each remainder, residues.length when it wraps to the next turn
+    private final int[] indexAtOrAfter;
+
+    Wheel(long... basePrimes) {
+        this.basePrimes = basePrimes;
+        int product = 1;
+        for (long prime : basePrimes) {
+            product *= (int) prime;
+        }
+        this.modulus = product;
+        int[] coprime = new int[modulus];
+        int count = 0;
+        for (int remainder = 1; remainder < modulus; ++remainder) {
+            boolean isCoprime = true;
+            for (long prime : basePrimes) {
+                if (remainder % prime == 0) {
+                    isCoprime = false;
+                    break;
+                }
+            }
+            if (isCoprime) {
+                coprime[count++] = remainder;
+            }
+        }
+        this.residues = Arrays.copyOf(coprime, count);
+        this.gaps = new int[count];
+        for (int i = 0; i < count; ++i) {
+            gaps[i] = i + 1 < count ? residues[i + 1] - residues[i] : modulus - residues[i] + residues[0];
+        }
+        this.indexAtOrAfter = new int[modulus];
+        int index = count;
+        for (int remainder = modulus - 1; remainder >= 0; --remainder) {
+            if (index > 0 && residues[index - 1] == remainder) {
+                --index;
+            }
+            indexAtOrAfter[remainder] = index;
+        }
+    }
+
+    public static Wheel forModulus(int modulus) {
+        for (Wheel wheel : values()) {
+            if (wheel.modulus == modulus) {
+                return wheel;
+            }
+        }
+        throw new IllegalArgumentException("no wheel with modulus " + modulus);
+    }
+
+    public int getModulus() {
+        return modulus;
+    }
+
+    public long[] getBasePrimes() {
+        return basePrimes.clone();
+    }
+
+    public long getLargestBasePrime() {
+        return basePrimes[basePrimes.length - 1];
+    }
+
+    /**
+     * @return the number of candidates in every turn of the wheel
+     */
+    public int getCandidatesPerTurn() {
+        return residues.length;
+    }
+
+    /**
+     * @return the share of odd numbers the wheel skips, compared to testing every odd number
+     */
+    public double getSkippedRatio() {
+        return 1 - 2.0 * residues.length / modulus;
+    }
+
+    public boolean isCandidate(long value) {
+        int remainder = (int) (value % modulus);
+        return indexAtOrAfter[remainder] < residues.length && residues[indexAtOrAfter[remainder]] == remainder;
+    }
+
+    /**
+     * @return the residue index of the first candidate at or above the non-negative value, use with
+     * {@link #firstCandidate}
+     */
+    public int firstIndex(long value) {
+        int index = indexAtOrAfter[(int) (value % modulus)];
+        return index == residues.length ? 0 : index;
+    }
+
+    /**
+     * @return the first candidate at or above the non-negative value, the caller keeps it clear of overflow
+     */
+    public long firstCandidate(long value) {
+        int remainder = (int) (value % modulus);
+        return value + distanceToCandidate(remainder);
+    }
+
+    public int firstIndex(BigInteger value) {
+        int index = indexAtOrAfter[value.mod(BigInteger.valueOf(modulus)).intValue()];
+        return index == residues.length ? 0 : index;
+    }
+
+    public BigInteger firstCandidate(BigInteger value) {
+        int remainder = value.mod(BigInteger.valueOf(modulus)).intValue();
+        return value.add(BigInteger.valueOf(distanceToCandidate(remainder)));
+    }
+
+    private int distanceToCandidate(int remainder) {
+        int index = indexAtOrAfter[remainder];
+        int target = index == residues.length ? modulus + residues[0] : residues[index];
+        return target - remainder;
+    }
+
+    public int getGap(int index) {
+        return gaps[index];
+    }
+
+    public int nextIndex(int index) {
+        return index + 1 == residues.length ? 0 : index + 1;
+    }
+}
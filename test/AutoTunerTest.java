@@ -0,0 +1,61 @@
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+public class AutoTunerTest {
+    private static final long SECONDS = 1_000_000_000L;
+
+    private static void testTriesThreadCountsWhileRunning() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            AutoTuner tuner = new AutoTuner(directory, BigDecimal.ZERO, 4);
+            Tests.checkEquals(4, tuner.recordProgress(BigDecimal.ZERO, 0), "all cores first");
+            Tests.checkEquals(4, tuner.recordProgress(BigDecimal.valueOf(10_000_000_000L), SECONDS),
+                    "settling in");
+            Tests.checkEquals(4, tuner.recordProgress(BigDecimal.valueOf(20_000_000_000L), 2 * SECONDS),
+                    "measured after settling in");
+            Tests.checkEquals(3, tuner.recordProgress(BigDecimal.valueOf(40_000_000_000L), 4 * SECONDS),
+                    "then one less");
+            //slower per number, but far higher up, where sieving a number takes more work
+            Tests.checkEquals(3, tuner.recordProgress(number(1_000_000_000_000_000_000L), 6 * SECONDS),
+                    "settling in again");
+            Tests.checkEquals(2, tuner.recordProgress(number(1_000_000_018_000_000_000L), 8 * SECONDS),
+                    "then half of them");
+            Tests.checkEquals(2, tuner.recordProgress(number(1_500_000_000_000_000_000L), 10 * SECONDS),
+                    "settling in once more");
+            Tests.checkEquals(3, tuner.recordProgress(number(1_500_000_010_000_000_000L), 12 * SECONDS),
+                    "the fastest for its magnitude");
+            Tests.checkEquals(3, tuner.getThreads(), "kept");
+            tuner.save();
+            Tests.checkEquals(3, new AutoTuner(directory, BigDecimal.ZERO, 4).getThreads(), "loaded");
+            Tests.checkEquals(8, new AutoTuner(directory, BigDecimal.ZERO, 8).getThreads(), "another number of cores");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testThreadLimitChangesWhileHeld() throws InterruptedException {
+        ThreadLimit limit = new ThreadLimit(2);
+        limit.acquire();
+        limit.acquire();
+        limit.setLimit(1);
+        limit.release();
+        Thread waiting = new Thread(limit::acquire);
+        waiting.start();
+        waiting.join(200);
+        Tests.check(waiting.isAlive(), "a lower limit holds once enough places were released");
+        limit.setLimit(3);
+        waiting.join(10_000);
+        Tests.check(!waiting.isAlive(), "a higher limit lets it in");
+    }
+
+    private static void testSieveCostGrowsWithTheMagnitude() {
+        Tests.check(AutoTuner.getSieveCost(0) > 0, "the cost of small numbers");
+        Tests.check(AutoTuner.getSieveCost(1e6) < AutoTuner.getSieveCost(1e12), "the cost grows");
+        Tests.check(AutoTuner.getSieveCost(1e18) < 2 * AutoTuner.getSieveCost(1e6), "but slowly");
+    }
+
+    private static BigDecimal number(long value) {
+        return BigDecimal.valueOf(value);
+    }
+}
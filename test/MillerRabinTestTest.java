@@ -0,0 +1,68 @@
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.Random;
+
+public class MillerRabinTestTest {
+    private static final MillerRabinTest TEST = MillerRabinTest.INSTANCE;
+
+    private static void testAgreesWithTrialDivision() {
+        for (long n = -5; n < 200_000; ++n) {
+            Tests.checkEquals(Tests.isPrime(n), TEST.isPrime(n), "isPrime(" + n + ")");
+        }
+        for (long n = 1_000_000_000_000L; n < 1_000_000_020_000L; ++n) {
+            Tests.checkEquals(Tests.isPrime(n), TEST.isPrime(n), "isPrime(" + n + ")");
+        }
+    }
+
+    private static void testRejectsPseudoprimes() {
+        //Carmichael numbers and strong pseudoprimes to several small bases
+        long[] composites = {561, 1105, 1729, 41041, 825265, 2047, 1373653, 25326001, 3215031751L,
+                2152302898747L, 3474749660383L, 341550071728321L, 3825123056546413051L,
+                //the squares of primes beyond the small primes the test divides by
+                53L * 53, 3037000493L * 3037000493L};
+        for (long composite : composites) {
+            Tests.check(!TEST.isPrime(composite), composite + " is composite");
+            Tests.check(!TEST.isPrime(BigInteger.valueOf(composite)), composite + " is composite as BigInteger");
+        }
+    }
+
+    private static void testTopOfTheLongRange() {
+        //the largest primes below 2^63
+        Tests.check(TEST.isPrime(9223372036854775783L), "9223372036854775783 is prime");
+        Tests.check(TEST.isPrime(9223372036854775643L), "9223372036854775643 is prime");
+        for (long n = Long.MAX_VALUE - 1000; n > 0 && n <= Long.MAX_VALUE - 1; ++n) {
+            Tests.checkEquals(BigInteger.valueOf(n).isProbablePrime(64), TEST.isPrime(n), "isPrime(" + n + ")");
+        }
+    }
+
+    private static void testBeyondTheLongRange() {
+        Tests.check(TEST.isPrime(BigInteger.ONE.shiftLeft(89).subtract(BigInteger.ONE)), "2^89 - 1 is prime");
+        Tests.check(!TEST.isPrime(BigInteger.ONE.shiftLeft(67).subtract(BigInteger.ONE)), "2^67 - 1 is composite");
+        BigInteger prime = BigInteger.valueOf(4_000_000_007L);
+        Tests.check(!TEST.isPrime(prime.multiply(prime)), "the square of a prime is composite");
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; ++i) {
+            BigInteger n = new BigInteger(64 + random.nextInt(64), random).setBit(63);
+            Tests.checkEquals(n.isProbablePrime(64), TEST.isPrime(n), "isPrime(" + n + ")");
+        }
+    }
+
+    private static void testNoAllocationPerCandidate() {
+        long n = 1_000_000_000_000_000_000L + 1;
+        //the first call per thread creates its arithmetic
+        TEST.isPrime(n);
+        long before = getAllocatedBytes();
+        int primes = 0;
+        for (int i = 0; i < 100_000; ++i) {
+            primes += TEST.isPrime(n + 2L * i) ? 1 : 0;
+        }
+        long allocated = getAllocatedBytes() - before;
+        Tests.check(primes > 0, "some candidates are prime");
+        Tests.check(allocated < 100_000, allocated + " bytes allocated for 100000 candidates");
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
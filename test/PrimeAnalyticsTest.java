@@ -0,0 +1,63 @@
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+public class PrimeAnalyticsTest {
+    private static void testRecountsThePrimesPastTheRetentionLimitFromTheLog() throws IOException {
+        String previousDirectory = PrimeStorage.getDirectory();
+        File directory = Tests.temporaryDirectory();
+        PrimeStorage.setDirectory(directory.getPath());
+        try {
+            File logDirectory = PrimeStorage.getLogDirectory();
+            PrimeLog log = new PrimeLog(logDirectory);
+            log.replay(start());
+            for (long from = 5; from < 20_000; from += 2000) {
+                long[] primes = Tests.oddPrimesBetween(from, from + 1998);
+                log.append(from + 1998, primes, primes.length);
+            }
+            log.close();
+
+            PrimeResult start = start();
+            start.getAllPrimes().setRetentionLimit(5000);
+            PrimeLog replayedLog = new PrimeLog(logDirectory);
+            PrimeResult replayed = replayedLog.replay(start);
+            Tests.check(replayed.getAllPrimes().getDroppedPrimes() > 0, "primes were dropped");
+            PrimeGapStats expected = PrimeGapStats.of(Tests.oddPrimesUpTo(20_003), Tests.oddPrimesUpTo(20_003).length);
+            PrimeAnalytics<PrimeGapStats> analytics = new PrimeAnalytics<>(new PrimeGapAnalyzer(), replayed,
+                    replayedLog);
+            checkEquals(expected, analytics.getTotal(), "recounted without a saved total");
+
+            //a saved total past the retention limit, the rest is counted from the log alone
+            PrimeList upTo9001 = Tests.primeList(Tests.oddPrimesUpTo(9001));
+            PrimeAnalytics<PrimeGapStats> saved = new PrimeAnalytics<>(new PrimeGapAnalyzer(),
+                    new PrimeResult(BigDecimal.valueOf(9001), upTo9001), null);
+            saved.save();
+            checkEquals(expected, new PrimeAnalytics<>(new PrimeGapAnalyzer(), replayed, replayedLog).getTotal(),
+                    "counted on from a saved total");
+            Tests.checkThrows(IllegalStateException.class,
+                    () -> new PrimeAnalytics<>(new PrimeGapAnalyzer(), replayed, null), "no log to recount from");
+            replayedLog.close();
+        } finally {
+            PrimeStorage.setDirectory(previousDirectory);
+            Tests.delete(directory);
+        }
+    }
+
+    private static void checkEquals(PrimeGapStats expected, PrimeGapStats actual, String message) {
+        Tests.checkEquals(expected.getCount(), actual.getCount(), message + ": count");
+        Tests.checkEquals(expected.getTwins(), actual.getTwins(), message + ": twins");
+        Tests.checkEquals(expected.getCousins(), actual.getCousins(), message + ": cousins");
+        Tests.checkEquals(expected.getSexy(), actual.getSexy(), message + ": sexy");
+        Tests.checkEquals(expected.getMaxGap(), actual.getMaxGap(), message + ": largest gap");
+        Tests.checkEquals(expected.getMaxGapStart(), actual.getMaxGapStart(), message + ": largest gap start");
+        for (long gap = 2; gap <= expected.getMaxGap(); gap += 2) {
+            Tests.checkEquals(expected.getGapCount(gap), actual.getGapCount(gap), message + ": gap " + gap);
+        }
+    }
+
+    private static PrimeResult start() {
+        PrimeList primes = new PrimeList();
+        primes.add(PrimeStorage.FIRST_ODD_PRIME);
+        return new PrimeResult(BigDecimal.valueOf(PrimeStorage.FIRST_ODD_PRIME), primes);
+    }
+}
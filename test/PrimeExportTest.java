@@ -0,0 +1,133 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class PrimeExportTest {
+    private static final long[] PRIMES = Tests.oddPrimesUpTo(300_000);
+
+    private static void testRoundTripsEveryFormat() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            for (ExportFormat format : ExportFormat.values()) {
+                for (boolean deflate : new boolean[]{false, true}) {
+                    String name = format.getName() + (deflate ? " deflated" : "");
+                    File file = new File(directory, name);
+                    //an odd start and a span that doesn't divide the range, so the last block is a short one
+                    long exported = PrimeExporter.export(file, primes(), 1001, 250_001, format, deflate, 10_000);
+                    long[] expected = Tests.oddPrimesBetween(1001, 250_001);
+                    Tests.checkEquals(expected.length, exported, name + ": exported");
+                    try (PrimeExport export = PrimeExport.open(file)) {
+                        Tests.checkEquals(format, export.getFormat(), name + ": format");
+                        Tests.checkEquals(deflate, export.isDeflated(), name + ": deflated");
+                        Tests.checkEquals(25, export.getBlockCount(), name + ": blocks");
+                        Tests.checkEquals(expected.length, export.getCount(), name + ": count");
+                        Tests.checkArrayEquals(expected, Tests.toArray(export.iterator(0, Long.MAX_VALUE)), name);
+                        Tests.checkArrayEquals(Tests.oddPrimesBetween(123_456, 133_333),
+                                Tests.toArray(export.iterator(123_456, 133_333)), name + ": a range across blocks");
+                        Tests.checkArrayEquals(Tests.oddPrimesBetween(11_001, 21_000), export.readBlock(1),
+                                name + ": the second block");
+                    }
+                }
+            }
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testEvenStartAndEmptyBlocks() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            File file = new File(directory, "primes.gaps");
+            //no prime lies between 1327 and 1361, so the block from 1331 is empty
+            PrimeExporter.export(file, primes(), 1300, 1400, ExportFormat.GAPS, false, 30);
+            try (PrimeExport export = PrimeExport.open(file)) {
+                Tests.checkEquals(1301, export.getFrom(), "the start moves to the next odd number");
+                Tests.checkArrayEquals(Tests.oddPrimesBetween(1300, 1400),
+                        Tests.toArray(export.iterator(0, Long.MAX_VALUE)), "primes");
+            }
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testRejectsAnIncompleteExport() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            File file = new File(directory, "primes.gaps");
+            PrimeExporter.export(file, primes(), 0, 100_000, ExportFormat.GAPS, true, 10_000);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() - 10);
+            }
+            Tests.checkThrows(IOException.class, () -> {
+                try (PrimeExport export = PrimeExport.open(file)) {
+                    export.readBlock(export.getBlockCount() - 1);
+                }
+            }, "truncated block");
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.write(0);
+            }
+            Tests.checkThrows(IOException.class, () -> PrimeExport.open(file).close(), "wrong magic number");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testTransfersTheFileAsIs() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            File file = new File(directory, "primes.bitset");
+            PrimeExporter.export(file, primes(), 0, 300_000, ExportFormat.BITSET, true, 1 << 16);
+            byte[] expected = Files.readAllBytes(file.toPath());
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            File copy = new File(directory, "copy");
+            try (PrimeExport export = PrimeExport.open(file); FileOutputStream out = new FileOutputStream(copy)) {
+                export.transferTo(stream);
+                export.transferTo(out);
+            }
+            Tests.check(Arrays.equals(expected, stream.toByteArray()), "copied to a stream");
+            Tests.check(Arrays.equals(expected, Files.readAllBytes(copy.toPath())), "transferred to a file");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testExportsOverHttp() throws IOException {
+        PrimeQueryServer server = new PrimeQueryServer(0, new PrimeQueryService(new PrimeResult(
+                BigDecimal.valueOf(300_001), Tests.primeList(PRIMES))));
+        server.start();
+        File directory = Tests.temporaryDirectory();
+        try {
+            File file = new File(directory, "primes.gaps");
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort()
+                    + "/export?from=0&to=1000000&compress=deflate").openConnection();
+            Tests.checkEquals(200, connection.getResponseCode(), "status");
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, file.toPath());
+            }
+            try (PrimeExport export = PrimeExport.open(file)) {
+                Tests.check(export.isDeflated(), "deflated");
+                //sieved past the stored primes
+                Tests.checkArrayEquals(Tests.oddPrimesUpTo(1_000_000), Tests.toArray(export.iterator(0, 1_000_000)),
+                        "exported primes");
+            }
+            HttpURLConnection invalid = (HttpURLConnection) new URL("http://localhost:" + server.getPort()
+                    + "/export?from=0&to=100&format=bits").openConnection();
+            Tests.checkEquals(400, invalid.getResponseCode(), "unknown format");
+        } finally {
+            server.stop();
+            Tests.delete(directory);
+        }
+    }
+
+    private static java.util.PrimitiveIterator.OfLong primes() {
+        return Arrays.stream(PRIMES).iterator();
+    }
+}
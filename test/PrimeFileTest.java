@@ -0,0 +1,134 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class PrimeFileTest {
+    private static final long[] PRIMES = Tests.oddPrimesUpTo(200_000);
+
+    private static void testRoundTrip() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            //a small interval, so lookups cross many index entries
+            File file = write(new File(directory, "primes.bin"), PRIMES, 16);
+            try (PrimeFile primeFile = PrimeFile.open(file)) {
+                Tests.checkEquals(PRIMES.length, primeFile.size(), "size");
+                Tests.checkEquals(200_000, primeFile.getMaxGenerated(), "max generated");
+                Tests.checkEquals(PRIMES[PRIMES.length - 1], primeFile.getLastPrime(), "last prime");
+                Tests.checkArrayEquals(PRIMES, Tests.toArray(primeFile.iterator(0, Long.MAX_VALUE)), "all primes");
+                for (int i = 0; i < PRIMES.length; i += 37) {
+                    Tests.checkEquals(PRIMES[i], primeFile.get(i), "prime " + i);
+                }
+                Tests.checkEquals(PRIMES[PRIMES.length - 1], primeFile.get(PRIMES.length - 1), "last index");
+            }
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testRankContainsAndRanges() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            File file = write(new File(directory, "primes.bin"), PRIMES, 16);
+            try (PrimeFile primeFile = PrimeFile.open(file)) {
+                Tests.checkEquals(0, primeFile.rank(2), "rank below the first prime");
+                Tests.checkEquals(1, primeFile.rank(3), "rank of the first prime");
+                Tests.checkEquals(PRIMES.length, primeFile.rank(Long.MAX_VALUE), "rank past the last prime");
+                long expected = 0;
+                for (long value = 1; value < 5000; ++value) {
+                    if (value % 2 != 0 && Tests.isPrime(value)) {
+                        ++expected;
+                    }
+                    Tests.checkEquals(expected, primeFile.rank(value), "rank of " + value);
+                    Tests.checkEquals(value % 2 != 0 && Tests.isPrime(value), primeFile.contains(value),
+                            "contains " + value);
+                }
+                Tests.checkArrayEquals(Tests.oddPrimesBetween(99_990, 100_200),
+                        Tests.toArray(primeFile.iterator(99_990, 100_200)), "range");
+                Tests.checkArrayEquals(new long[0], Tests.toArray(primeFile.iterator(24, 28)), "range without primes");
+            }
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testEmptyFile() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            File file = write(new File(directory, "primes.bin"), new long[0], PrimeFile.DEFAULT_INDEX_INTERVAL);
+            try (PrimeFile primeFile = PrimeFile.open(file)) {
+                Tests.checkEquals(0, primeFile.size(), "size");
+                Tests.checkEquals(0, primeFile.rank(1000), "rank");
+                Tests.check(!primeFile.iterator(0, Long.MAX_VALUE).hasNext(), "an empty file has no primes");
+            }
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testRejectsDamagedFiles() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            File file = write(new File(directory, "primes.bin"), PRIMES, 16);
+            long length = file.length();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(length - 100);
+            }
+            Tests.checkThrows(IOException.class, () -> PrimeFile.open(file).close(), "truncated file");
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.write(0);
+            }
+            Tests.checkThrows(IOException.class, () -> PrimeFile.open(file).close(), "wrong magic number");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testRejectsUnorderedPrimes() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try (PrimeFileWriter writer = new PrimeFileWriter(new File(directory, "primes.bin"))) {
+            writer.add(5);
+            Tests.checkThrows(IllegalArgumentException.class, () -> writer.add(3), "descending prime");
+            Tests.checkThrows(IllegalArgumentException.class, () -> writer.add(8), "even number");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testParallelWriterWritesTheSameFile() throws IOException {
+        //more than two chunks of the parallel writer
+        long[] primes = SegmentedSieveGenerator.oddPrimesUpTo(50_000_000);
+        Tests.check(primes.length > 2 * ParallelPrimeIO.CHUNK_PRIMES, "chunks: " + primes.length);
+        File directory = Tests.temporaryDirectory();
+        try {
+            File serial = new File(directory, "serial.bin");
+            try (PrimeFileWriter writer = new PrimeFileWriter(serial)) {
+                for (long prime : primes) {
+                    writer.add(prime);
+                }
+                writer.finish(50_000_000);
+            }
+            File parallel = new File(directory, "parallel.bin");
+            ParallelPrimeIO.writeBinary(parallel, Tests.primeList(primes), 50_000_000);
+            Tests.check(Arrays.equals(Files.readAllBytes(serial.toPath()), Files.readAllBytes(parallel.toPath())),
+                    "the files are the same");
+            try (PrimeFile primeFile = PrimeFile.open(parallel)) {
+                int index = ParallelPrimeIO.CHUNK_PRIMES + 5;
+                Tests.checkEquals(primes[index], primeFile.get(index), "a prime of the second chunk");
+            }
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    static File write(File file, long[] primes, int indexInterval) throws IOException {
+        try (PrimeFileWriter writer = new PrimeFileWriter(file, indexInterval)) {
+            for (long prime : primes) {
+                writer.add(prime);
+            }
+            writer.finish(primes.length == 0 ? 0 : 200_000);
+        }
+        return file;
+    }
+}
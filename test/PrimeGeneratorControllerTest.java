@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+
+public class PrimeGeneratorControllerTest {
+    private static final long START = 1_000_000;
+
+    private static void testStopsWhenADurableSinkFails() throws InterruptedException {
+        PrimeGeneratorController controller = createController();
+        controller.addSink(new FailingSink(true));
+        Thread thread = new Thread(() -> {
+            try {
+                controller.startGenerating();
+            } catch (IllegalStateException e) {
+                //the failure is reported by the sink and the controller
+            }
+        });
+        thread.start();
+        thread.join(30_000);
+        Tests.check(!thread.isAlive(), "the run stopped without being stopped");
+        Tests.checkThrows(IllegalStateException.class, controller::awaitCompletion, "the failure is passed on");
+        Tests.check(controller.getResult().getMaxGenerated().compareTo(BigDecimal.valueOf(START)) > 0,
+                "the ranges before the failure are committed");
+    }
+
+    private static void testKeepsGoingWhenAnOptionalSinkFails() throws InterruptedException {
+        PrimeGeneratorController controller = createController();
+        FailingSink sink = new FailingSink(false);
+        controller.addSink(sink);
+        Thread thread = new Thread(controller::startGenerating);
+        thread.start();
+        while (sink.getError() == null) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        Tests.check(thread.isAlive(), "still generating");
+        controller.stopGenerating(() -> {
+        });
+        thread.join(30_000);
+        Tests.check(!thread.isAlive(), "stopped");
+    }
+
+    private static void testPassesAFailureOnToTheWaitingCode() throws InterruptedException {
+        PrimeGeneratorController controller = createController();
+        controller.setRunPolicy(new RunPolicy() {
+            @Override
+            public boolean isReached(PrimeResult result) {
+                throw new IllegalArgumentException("broken policy");
+            }
+        });
+        Thread thread = new Thread(() -> {
+            try {
+                controller.startGenerating();
+            } catch (IllegalArgumentException e) {
+                //thrown on the generating thread as well
+            }
+        });
+        thread.start();
+        thread.join(30_000);
+        Tests.check(!thread.isAlive(), "generating ended");
+        try {
+            controller.awaitCompletion();
+            Tests.check(false, "no failure passed on");
+        } catch (IllegalStateException e) {
+            Tests.check(e.getCause() instanceof IllegalArgumentException, "the cause: " + e.getCause());
+        }
+    }
+
+    private static PrimeGeneratorController createController() {
+        long[] primes = SegmentedSieveGenerator.oddPrimesUpTo(START);
+        PrimeGeneratorController controller = new PrimeGeneratorController(new PrimeResult(
+                BigDecimal.valueOf(START), Tests.primeList(primes)), 2);
+        controller.setMaxCalculationsPerCore(BigDecimal.valueOf(100_000));
+        return controller;
+    }
+
+    private static class FailingSink extends PrimeSink {
+        private final boolean durable;
+        private int batches = 0;
+
+        private FailingSink(boolean durable) {
+            this.durable = durable;
+        }
+
+        @Override
+        protected void accept(PrimeBatch batch) throws IOException {
+            if (++batches == 3) {
+                throw new IOException("disk full");
+            }
+        }
+
+        @Override
+        public boolean isDurable() {
+            return durable;
+        }
+    }
+}
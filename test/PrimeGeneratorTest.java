@@ -0,0 +1,120 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PrimeGeneratorTest {
+    private static final long FROM = 1_000_000_000_001L;
+    private static final PrimeList DIVISORS = Tests.primeList(Tests.oddPrimesUpTo(1_100_000));
+
+    private static void testFindsThePrimesOfARange() {
+        PrimeGenerator generator = new PrimeGenerator(BigDecimal.valueOf(FROM), BigDecimal.valueOf(FROM + 20_000),
+                DIVISORS);
+        generator.generate();
+        Tests.checkArrayEquals(Tests.oddPrimesBetween(FROM, FROM + 20_000), primes(generator.getBatch()), "primes");
+        PrimeGenerator small = new PrimeGenerator(BigDecimal.ONE, BigDecimal.valueOf(1000), DIVISORS);
+        small.generate();
+        Tests.checkArrayEquals(Tests.oddPrimesUpTo(1000), primes(small.getBatch()), "the wheel's base primes");
+    }
+
+    private static void testCancelledBeforeStarting() {
+        PrimeGenerator generator = new PrimeGenerator(BigDecimal.valueOf(FROM), BigDecimal.valueOf(FROM + 20_000),
+                DIVISORS);
+        generator.cancel();
+        generator.generate();
+        Tests.checkEquals(0, generator.getBatch().size(), "no primes");
+        Tests.check(generator.getBatch().getTo().compareTo(BigDecimal.valueOf(FROM)) < 0, "nothing covered");
+    }
+
+    private static void testTrialDivisionResumesWhereItWasCancelled() throws InterruptedException {
+        checkResume(from -> new PrimeGenerator(from, from.add(BigDecimal.valueOf(1L << 40)), DIVISORS),
+                BigDecimal.valueOf(FROM));
+    }
+
+    private static void testPrimalityTestResumesWhereItWasCancelled() throws InterruptedException {
+        checkResume(from -> new PrimeGenerator(from, from.add(BigDecimal.valueOf(1L << 40)),
+                MillerRabinTest.INSTANCE), BigDecimal.valueOf(FROM));
+    }
+
+    private static void testResumesBeyondTheLongRange() throws InterruptedException {
+        checkResume(from -> new PrimeGenerator(from, from.add(BigDecimal.valueOf(1L << 40)),
+                MillerRabinTest.INSTANCE), new BigDecimal(BigInteger.ONE.shiftLeft(64).add(BigInteger.ONE)));
+    }
+
+    private static void testSieveResumesWhereItWasCancelled() throws InterruptedException {
+        long[] sievingPrimes = SegmentedSieveGenerator.oddPrimesUpTo(1_100_000);
+        checkResume(from -> new SegmentedSieveGenerator(from.longValueExact(), from.longValueExact() + (1L << 40),
+                sievingPrimes), BigDecimal.valueOf(FROM));
+    }
+
+    private interface GeneratorFactory {
+        RangeGenerator create(BigDecimal from);
+    }
+
+    /**
+     * Cancels a range that is being generated and generates on from where it ended, as the scheduler does: no
+     * number may be skipped or looked at twice.
+     */
+    private static void checkResume(GeneratorFactory factory, BigDecimal from) throws InterruptedException {
+        RangeGenerator first = factory.create(from);
+        Thread thread = new Thread(first::generate);
+        thread.start();
+        Thread.sleep(20);
+        first.cancel();
+        thread.join();
+        PrimeBatch cancelled = first.getBatch();
+        BigDecimal end = cancelled.getTo();
+        Tests.check(end.remainder(BigDecimal.valueOf(2)).signum() != 0, "cancelled at an odd number: " + end);
+        Tests.check(end.compareTo(from) > 0, "some candidates were tested before cancelling");
+        Tests.check(end.compareTo(from.add(BigDecimal.valueOf(1L << 40))) < 0, "cancelled before the end");
+        Tests.checkEquals(end, first.getTimings().getEndSearch(), "the timings end with the batch");
+
+        BigDecimal resumeFrom = end.add(BigDecimal.valueOf(2));
+        RangeGenerator second = factory.create(resumeFrom);
+        Thread resumed = new Thread(second::generate);
+        resumed.start();
+        Thread.sleep(20);
+        second.cancel();
+        resumed.join();
+        List<BigInteger> found = new ArrayList<>();
+        addAll(found, cancelled);
+        addAll(found, second.getBatch());
+        Tests.checkEquals(expected(from.toBigIntegerExact(), second.getBatch().getTo().toBigIntegerExact()), found,
+                "the primes of both parts");
+    }
+
+    /**
+     * @return the primes from up to last, sieved in one go inside the sieve's range
+     */
+    private static List<BigInteger> expected(BigInteger from, BigInteger last) {
+        List<BigInteger> expected = new ArrayList<>();
+        if (last.compareTo(BigInteger.valueOf(SegmentedSieveGenerator.MAX_VALUE)) <= 0) {
+            SegmentedSieveGenerator sieve = new SegmentedSieveGenerator(from.longValueExact(), last.longValueExact(),
+                    SegmentedSieveGenerator.oddPrimesUpTo(last.sqrt().longValueExact() + 1));
+            sieve.generate();
+            addAll(expected, sieve.getBatch());
+            return expected;
+        }
+        for (BigInteger n = from; n.compareTo(last) <= 0; n = n.add(BigInteger.TWO)) {
+            if (MillerRabinTest.INSTANCE.isPrime(n)) {
+                expected.add(n);
+            }
+        }
+        return expected;
+    }
+
+    private static void addAll(List<BigInteger> target, PrimeBatch batch) {
+        for (int i = 0; i < batch.getCount(); ++i) {
+            target.add(BigInteger.valueOf(batch.getPrimes()[i]));
+        }
+        for (BigDecimal prime : batch.getLargePrimes()) {
+            target.add(prime.toBigIntegerExact());
+        }
+    }
+
+    private static long[] primes(PrimeBatch batch) {
+        long[] primes = new long[batch.getCount()];
+        System.arraycopy(batch.getPrimes(), 0, primes, 0, primes.length);
+        return primes;
+    }
+}
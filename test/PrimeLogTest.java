@@ -0,0 +1,183 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+
+public class PrimeLogTest {
+    private static void testReplaysCheckpointedRecords() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            PrimeLog log = new PrimeLog(directory);
+            log.replay(start());
+            append(log, 5, 1001);
+            append(log, 1003, 5001);
+            log.close();
+
+            PrimeLog reopened = new PrimeLog(directory);
+            PrimeResult replayed = reopened.replay(start());
+            reopened.close();
+            Tests.checkEquals(BigDecimal.valueOf(5001), replayed.getMaxGenerated(), "max generated");
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(5001), Tests.toArray(replayed.getAllPrimes().iterator()),
+                    "replayed primes");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testDropsRecordsAfterTheCheckpoint() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            PrimeLog log = new PrimeLog(directory);
+            log.setCheckpointIntervalMillis(Long.MAX_VALUE);
+            log.replay(start());
+            append(log, 5, 1001);
+            log.checkpoint();
+            //never checkpointed, as if the process died before the next checkpoint
+            append(log, 1003, 2001);
+
+            PrimeLog reopened = new PrimeLog(directory);
+            PrimeResult replayed = reopened.replay(start());
+            Tests.checkEquals(BigDecimal.valueOf(1001), replayed.getMaxGenerated(), "max generated");
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(1001), Tests.toArray(replayed.getAllPrimes().iterator()),
+                    "replayed primes");
+            //the log goes on from the checkpoint, the dropped record is overwritten
+            append(reopened, 1003, 3001);
+            reopened.close();
+            PrimeResult again = new PrimeLog(directory).replay(start());
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(3001), Tests.toArray(again.getAllPrimes().iterator()),
+                    "primes after appending past the checkpoint");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testRejectsACorruptRecord() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            PrimeLog log = new PrimeLog(directory);
+            log.replay(start());
+            append(log, 5, 1001);
+            append(log, 1003, 2001);
+            log.close();
+            File[] segments = directory.listFiles(file -> file.getName().endsWith(".log"));
+            Tests.check(segments != null && segments.length == 1, "one segment");
+            //a flipped bit in the payload of the first record fails its CRC
+            try (RandomAccessFile raf = new RandomAccessFile(segments[0], "rw")) {
+                raf.seek(20);
+                int b = raf.read();
+                raf.seek(20);
+                raf.write(b ^ 0x10);
+            }
+            Tests.checkThrows(IOException.class, () -> new PrimeLog(directory).replay(start()), "corrupt record");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testSkipsWhatTheSnapshotCovers() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            PrimeLog log = new PrimeLog(directory);
+            log.replay(start());
+            append(log, 5, 1001);
+            append(log, 1003, 2001);
+            log.close();
+            PrimeResult snapshot = new PrimeResult(BigDecimal.valueOf(1001),
+                    Tests.primeList(Tests.oddPrimesUpTo(1001)));
+            PrimeResult replayed = new PrimeLog(directory).replay(snapshot);
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(2001), Tests.toArray(replayed.getAllPrimes().iterator()),
+                    "primes of the snapshot and the log");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testReadLeavesTheLogAsItIs() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            PrimeLog log = new PrimeLog(directory);
+            log.setCheckpointIntervalMillis(Long.MAX_VALUE);
+            log.replay(start());
+            append(log, 5, 1001);
+            log.checkpoint();
+            append(log, 1003, 2001);
+
+            PrimeResult read = new PrimeLog(directory).read(start());
+            Tests.checkEquals(BigDecimal.valueOf(1001), read.getMaxGenerated(), "max generated");
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(1001), Tests.toArray(read.getAllPrimes().iterator()),
+                    "read primes");
+            //the writer goes on, its uncheckpointed record is still there
+            log.checkpoint();
+            log.close();
+            PrimeResult replayed = new PrimeLog(directory).replay(start());
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(2001), Tests.toArray(replayed.getAllPrimes().iterator()),
+                    "primes after the writer's checkpoint");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testReplayKeepsToTheRetentionLimit() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try {
+            PrimeLog log = new PrimeLog(directory);
+            log.replay(start());
+            append(log, 5, 1001);
+            append(log, 1003, 5001);
+            log.close();
+
+            PrimeResult start = start();
+            start.getAllPrimes().setRetentionLimit(1500);
+            PrimeResult replayed = new PrimeLog(directory).replay(start);
+            Tests.checkEquals(BigDecimal.valueOf(5001), replayed.getMaxGenerated(), "max generated");
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(1500), Tests.toArray(replayed.getAllPrimes().iterator()),
+                    "retained primes");
+            Tests.checkEquals(Tests.oddPrimesBetween(1501, 5001).length, replayed.getAllPrimes().getDroppedPrimes(),
+                    "dropped primes");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testRotatesAndCompacts() throws IOException {
+        String previousDirectory = PrimeStorage.getDirectory();
+        File directory = Tests.temporaryDirectory();
+        PrimeStorage.setDirectory(directory.getPath());
+        try {
+            File logDirectory = PrimeStorage.getLogDirectory();
+            PrimeLog log = new PrimeLog(logDirectory);
+            //every record fills a segment, so every append seals one
+            log.setSegmentSize(1);
+            log.replay(start());
+            for (long from = 5; from < 20_000; from += 2000) {
+                append(log, from, from + 1998);
+            }
+            log.compact();
+            log.close();
+            File snapshot = PrimeStorage.getLatestBinaryFile();
+            Tests.check(snapshot != null, "compaction wrote a snapshot");
+            try (PrimeFile primeFile = PrimeFile.open(snapshot)) {
+                Tests.checkArrayEquals(Tests.oddPrimesUpTo(20_003),
+                        Tests.toArray(primeFile.iterator(0, Long.MAX_VALUE)), "compacted primes");
+            }
+            PrimeResult restored = new PrimeLog(logDirectory).replay(PrimeStorage.get());
+            Tests.checkEquals(BigDecimal.valueOf(20_003), restored.getMaxGenerated(), "max generated");
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(20_003), Tests.toArray(restored.getAllPrimes().iterator()),
+                    "restored primes");
+        } finally {
+            PrimeStorage.setDirectory(previousDirectory);
+            Tests.delete(directory);
+        }
+    }
+
+    private static PrimeResult start() {
+        PrimeList primes = new PrimeList();
+        primes.add(PrimeStorage.FIRST_ODD_PRIME);
+        return new PrimeResult(BigDecimal.valueOf(PrimeStorage.FIRST_ODD_PRIME), primes);
+    }
+
+    private static void append(PrimeLog log, long from, long to) throws IOException {
+        long[] primes = Tests.oddPrimesBetween(from, to);
+        log.append(to, primes, primes.length);
+    }
+}
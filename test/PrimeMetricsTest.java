@@ -0,0 +1,43 @@
+import java.math.BigDecimal;
+
+public class PrimeMetricsTest {
+    private static void testUnnamedThreadsAreKeptApart() throws InterruptedException {
+        PrimeMetrics metrics = new PrimeMetrics();
+        metrics.setGeneratingThreads(2);
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(() -> metrics.recordGenerate(timing(1_000_000)), "");
+            threads[i].start();
+            threads[i].join();
+        }
+        Tests.checkEquals(2, metrics.getThreadUtilisationPerThread().size(), "threads measured");
+        Tests.check(metrics.getThreadUtilisationPerThread().containsKey(threads[0].getId()), "keyed by thread id");
+        String text = metrics.toPrometheusText();
+        Tests.check(text.contains("primes_thread_utilisation{thread=\"" + threads[1].getId() + "\",name=\"\"}"),
+                "a line per thread");
+    }
+
+    private static void testEndedThreadsArePruned() throws InterruptedException {
+        PrimeMetrics metrics = new PrimeMetrics();
+        for (int i = 0; i < 1000; ++i) {
+            Thread thread = new Thread(() -> metrics.recordGenerate(timing(1000)));
+            thread.start();
+            thread.join();
+        }
+        Tests.check(metrics.getThreadUtilisationPerThread().size() <= 257, "ended threads are dropped");
+    }
+
+    private static void testCountsCommittedRanges() {
+        PrimeMetrics metrics = new PrimeMetrics();
+        metrics.recordCommit(timing(1000), 10);
+        metrics.recordCommit(timing(1000), 10);
+        Tests.checkEquals(2, metrics.getRangesCommitted(), "ranges committed");
+        Tests.checkEquals(8, metrics.getPrimesFound(), "primes found");
+        Tests.checkEquals(200, metrics.getNumbersProcessed(), "numbers processed");
+        Tests.check(metrics.toPrometheusText().contains("\nprimes_ranges_committed_total 2\n"), "counter line");
+    }
+
+    private static PrimeGeneratorTiming timing(long nanos) {
+        return new PrimeGeneratorTiming("test", nanos, BigDecimal.ONE, BigDecimal.valueOf(100), 4);
+    }
+}
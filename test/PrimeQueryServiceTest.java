@@ -0,0 +1,80 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class PrimeQueryServiceTest {
+    private static final long MAX_GENERATED = 100_001;
+    private static final long[] PRIMES = Tests.oddPrimesUpTo(MAX_GENERATED);
+
+    private static void testAnswersFromStoredPrimes() {
+        PrimeQueryService service = service();
+        Tests.check(service.isPrime(2) && service.isPrime(99_991) && !service.isPrime(99_993), "isPrime");
+        Tests.checkEquals(PRIMES.length + 1, service.countUpTo(MAX_GENERATED), "pi of maxGenerated");
+        Tests.checkEquals(2, service.nth(1), "the first prime");
+        Tests.checkEquals(PRIMES[99], service.nth(101), "the 101st prime");
+        Tests.checkEquals(99_991, service.next(99_989), "next");
+        Tests.checkEquals(99_989, service.previous(99_991), "previous");
+        Tests.checkEquals(2, service.previous(3), "previous of 3");
+    }
+
+    private static void testSievesPastMaxGenerated() {
+        PrimeQueryService service = service();
+        long[] expected = Tests.oddPrimesBetween(99_000, 3_000_000);
+        Tests.checkArrayEquals(expected, Tests.toArray(service.range(99_000, 3_000_000)), "range across maxGenerated");
+        Tests.checkEquals(Tests.oddPrimesUpTo(3_000_000).length + 1, service.countUpTo(3_000_000), "pi");
+        Tests.checkEquals(expected[expected.length - 1], service.previous(3_000_000), "previous");
+        Tests.checkEquals(Tests.oddPrimesBetween(2_999_000, 3_100_000)[0], service.next(2_999_000), "next");
+    }
+
+    private static void testRejectsValuesPastTheSupportedRange() {
+        PrimeQueryService service = service();
+        Tests.checkThrows(IllegalArgumentException.class, () -> service.next(Long.MAX_VALUE), "next of Long.MAX_VALUE");
+        Tests.checkThrows(IllegalArgumentException.class, () -> service.next(SegmentedSieveGenerator.MAX_VALUE),
+                "next at the sieve limit");
+        Tests.checkThrows(IllegalArgumentException.class, () -> service.countUpTo(Long.MAX_VALUE), "pi");
+        Tests.checkThrows(IllegalArgumentException.class, () -> service.previous(Long.MAX_VALUE), "previous");
+        Tests.checkThrows(IllegalArgumentException.class, () -> service.next(1L << 40), "too far past the primes");
+    }
+
+    private static void testHttpQueries() throws IOException {
+        PrimeQueryServer server = new PrimeQueryServer(0, service());
+        server.start();
+        try {
+            Tests.checkEquals("200 99991\n", get(server, "/next?x=99989"), "next");
+            Tests.checkEquals("200 true\n", get(server, "/isPrime?n=99991"), "isPrime");
+            Tests.checkEquals("200 3\n5\n7\n", get(server, "/range?from=3&to=10"), "range");
+            String overflow = get(server, "/next?x=" + Long.MAX_VALUE);
+            Tests.check(overflow.startsWith("400 outside of the supported range"), "next of Long.MAX_VALUE: "
+                    + overflow);
+            Tests.check(get(server, "/pi?x=abc").startsWith("400 "), "unreadable number");
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static PrimeQueryService service() {
+        return new PrimeQueryService(new PrimeResult(BigDecimal.valueOf(MAX_GENERATED), Tests.primeList(PRIMES)));
+    }
+
+    /**
+     * @return the status code, a space and the body
+     */
+    static String get(PrimeQueryServer server, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+                .openConnection();
+        try {
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                in.transferTo(body);
+                return status + " " + new String(body.toByteArray(), StandardCharsets.UTF_8);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
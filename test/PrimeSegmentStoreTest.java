@@ -0,0 +1,68 @@
+import java.io.File;
+import java.io.IOException;
+
+public class PrimeSegmentStoreTest {
+    private static final long[] PRIMES = Tests.oddPrimesUpTo(200_000);
+
+    private static void testAnswersLikeTheFile() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try (PrimeSegmentStore store = open(directory, 1000, Long.MAX_VALUE)) {
+            Tests.checkEquals(PRIMES.length, store.size(), "size");
+            for (int i = 0; i < PRIMES.length; i += 7) {
+                Tests.checkEquals(PRIMES[i], store.get(i), "prime " + i);
+            }
+            Tests.checkEquals(PRIMES.length, store.rank(200_000), "rank");
+            Tests.check(store.contains(199_999) && !store.contains(199_997), "contains");
+            Tests.checkArrayEquals(Tests.oddPrimesBetween(1000, 50_000), Tests.toArray(store.iterator(1000, 50_000)),
+                    "range across segments");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testCachedSegmentsServeIndexLookups() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        try (PrimeSegmentStore store = open(directory, 1000, Long.MAX_VALUE)) {
+            for (int i = 0; i < PRIMES.length; ++i) {
+                store.get(i);
+            }
+            //a miss per segment, every other lookup is answered from the cache
+            long segments = store.getCachedSegments();
+            Tests.checkEquals(segments, store.getMisses(), "misses");
+            Tests.checkEquals(PRIMES.length - segments, store.getHits(), "hits");
+            for (int i = PRIMES.length - 1; i >= 0; --i) {
+                Tests.checkEquals(PRIMES[i], store.get(i), "cached prime " + i);
+            }
+            Tests.checkEquals(segments, store.getMisses(), "misses after the second pass");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static void testEvictsPastItsBudget() throws IOException {
+        File directory = Tests.temporaryDirectory();
+        //room for a few segments of about 80 primes each
+        try (PrimeSegmentStore store = open(directory, 1000, 3000)) {
+            for (int i = 0; i < PRIMES.length; i += 3) {
+                Tests.checkEquals(PRIMES[i], store.get(i), "prime " + i);
+            }
+            Tests.check(store.getEvictions() > 0, "segments were evicted");
+            Tests.check(store.getCachedBytes() <= 3000, "cached bytes within the budget: " + store.getCachedBytes());
+            Tests.checkEquals(store.getMisses() - store.getCachedSegments(), store.getEvictions(), "evictions");
+            //evicted segments are decoded again
+            Tests.checkEquals(PRIMES[0], store.get(0), "first prime");
+            PrimeMetrics metrics = new PrimeMetrics();
+            metrics.setSegmentStore(store);
+            Tests.checkEquals(store.getMisses(), metrics.getSegmentCacheMisses(), "misses in the metrics");
+            Tests.check(metrics.toPrometheusText().contains("\nprimes_segment_cache_evictions_total "
+                    + store.getEvictions() + "\n"), "evictions in the metrics");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    private static PrimeSegmentStore open(File directory, long segmentSpan, long cacheBytes) throws IOException {
+        File file = PrimeFileTest.write(new File(directory, "primes.bin"), PRIMES, 16);
+        return new PrimeSegmentStore(PrimeFile.open(file), segmentSpan, cacheBytes);
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.Socket;
+
+public class RangeCoordinatorTest {
+    private static void testLeasesAndMergesOverTheProtocol() throws Exception {
+        RangeCoordinator coordinator = new RangeCoordinator(start(), 0);
+        coordinator.startCoordinating();
+        try (Socket socket = new Socket("localhost", coordinator.getPort());
+             DataInputStream in = new DataInputStream(socket.getInputStream());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(RangeCoordinator.PROTOCOL_MAGIC);
+            long[] first = requestLease(in, out);
+            long[] second = requestLease(in, out);
+            Tests.checkEquals(5, first[1], "the first lease starts past the saved primes");
+            Tests.checkEquals(first[2] + 2, second[1], "leases are contiguous");
+            Tests.check(first[3] * first[3] > first[2], "the sieving bound covers the lease");
+            //finished out of order, the frontier waits for the first lease
+            sendResult(out, second);
+            Thread.sleep(200);
+            Tests.checkEquals(BigDecimal.valueOf(PrimeStorage.FIRST_ODD_PRIME),
+                    coordinator.getResult().getMaxGenerated(), "nothing merged past a gap");
+            sendResult(out, first);
+            waitForMerge(coordinator, BigDecimal.valueOf(second[2]));
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(second[2]),
+                    Tests.toArray(coordinator.getResult().getAllPrimes().iterator()), "merged primes");
+        }
+        coordinator.stopCoordinating(() -> { });
+    }
+
+    private static void testRejectsAStranger() throws IOException {
+        RangeCoordinator coordinator = new RangeCoordinator(start(), 0);
+        coordinator.startCoordinating();
+        try (Socket socket = new Socket("localhost", coordinator.getPort());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(0x47455420);//"GET "
+            out.flush();
+            Tests.checkEquals(-1, socket.getInputStream().read(), "the connection is closed");
+        }
+        coordinator.stopCoordinating(() -> { });
+    }
+
+    private static void testReassignsTheLeaseOfALostWorker() throws Exception {
+        RangeCoordinator coordinator = new RangeCoordinator(start(), 0);
+        coordinator.startCoordinating();
+        long[] lost;
+        try (Socket socket = new Socket("localhost", coordinator.getPort());
+             DataInputStream in = new DataInputStream(socket.getInputStream());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(RangeCoordinator.PROTOCOL_MAGIC);
+            lost = requestLease(in, out);
+        }
+        try (Socket socket = new Socket("localhost", coordinator.getPort());
+             DataInputStream in = new DataInputStream(socket.getInputStream());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(RangeCoordinator.PROTOCOL_MAGIC);
+            long[] lease = requestLease(in, out);
+            //the disconnect may not have been noticed yet, then the next lease comes first
+            for (int i = 0; i < 100 && lease[1] != lost[1]; ++i) {
+                Thread.sleep(10);
+                lease = requestLease(in, out);
+            }
+            Tests.checkEquals(lost[1], lease[1], "the lost lease is leased again");
+            Tests.check(lease[0] != lost[0], "under a new id");
+        }
+        coordinator.stopCoordinating(() -> { });
+    }
+
+    private static void testKeepsOnlyTheRetainedPrimesInMemory() throws Exception {
+        File directory = Tests.temporaryDirectory();
+        try {
+            PrimeLog log = new PrimeLog(directory);
+            RangeCoordinator coordinator = new RangeCoordinator(log.replay(start()), 0);
+            coordinator.setPrimeLog(log);
+            coordinator.setRetentionLimit(100_000);
+            coordinator.startCoordinating();
+            Thread worker = new Thread(new RangeWorker("localhost", coordinator.getPort()));
+            worker.start();
+            waitForMerge(coordinator, BigDecimal.valueOf(PrimeStorage.FIRST_ODD_PRIME + 2));
+            coordinator.stopCoordinating(() -> { });
+            worker.join(10_000);
+            Tests.check(!worker.isAlive(), "the worker is stopped");
+            log.close();
+
+            PrimeResult result = coordinator.getResult();
+            PrimeList primes = result.getAllPrimes();
+            Tests.checkArrayEquals(Tests.oddPrimesUpTo(100_000), Tests.toArray(primes.iterator()), "retained primes");
+            Tests.check(primes.getDroppedPrimes() > 0, "primes above the limit are dropped");
+            PrimeResult start = start();
+            start.getAllPrimes().setRetentionLimit(100_000);
+            PrimeResult logged = new PrimeLog(directory).read(start);
+            Tests.checkEquals(result.getMaxGenerated(), logged.getMaxGenerated(), "the log covers every range");
+            Tests.checkEquals(primes.size() + primes.getDroppedPrimes(),
+                    logged.getAllPrimes().size() + logged.getAllPrimes().getDroppedPrimes(), "primes in the log");
+        } finally {
+            Tests.delete(directory);
+        }
+    }
+
+    /**
+     * @return {id, from, to, bound of the sieving primes}
+     */
+    private static long[] requestLease(DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeByte(RangeCoordinator.REQUEST_LEASE);
+        out.flush();
+        Tests.checkEquals(RangeCoordinator.LEASE, in.readByte(), "reply");
+        return new long[]{in.readLong(), in.readLong(), in.readLong(), in.readLong()};
+    }
+
+    private static void sendResult(DataOutputStream out, long[] lease) throws IOException {
+        long[] primes = Tests.oddPrimesBetween(lease[1], lease[2]);
+        out.writeByte(RangeCoordinator.RESULT);
+        out.writeLong(lease[0]);
+        out.writeLong(1000);
+        out.writeInt(primes.length);
+        for (int i = 0; i < primes.length; ++i) {
+            PrimeFileWriter.writeVarint(out, i == 0 ? primes[i] : (primes[i] - primes[i - 1]) >>> 1);
+        }
+        out.flush();
+    }
+
+    /**
+     * Waits up to ten seconds for the coordinator to merge up to at least maxGenerated.
+     */
+    private static void waitForMerge(RangeCoordinator coordinator, BigDecimal maxGenerated)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (coordinator.getResult().getMaxGenerated().compareTo(maxGenerated) < 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static PrimeResult start() {
+        PrimeList primes = new PrimeList();
+        primes.add(PrimeStorage.FIRST_ODD_PRIME);
+        return new PrimeResult(BigDecimal.valueOf(PrimeStorage.FIRST_ODD_PRIME), primes);
+    }
+}
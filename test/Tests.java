@@ -0,0 +1,183 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Minimal test runner: every static, parameterless test* method of the test classes is run on its own, a thrown
+ * exception or a failed check fails it. Runs the classes given as arguments, all of them when none are given.
+ */
+public class Tests {
+    private static final String[] TEST_CLASSES = {"PrimeFileTest", "PrimeLogTest", "MillerRabinTestTest",
+            "PrimeMetricsTest", "PrimeQueryServiceTest", "PrimeSegmentStoreTest",
+            "RangeCoordinatorTest", "PrimeGeneratorTest", "PrimeExportTest", "AutoTunerTest",
+            "PrimeGeneratorControllerTest", "PrimeAnalyticsTest"};
+
+    public static void main(String[] args) throws Exception {
+        String[] classNames = args.length == 0 ? TEST_CLASSES : args;
+        int passed = 0;
+        int failed = 0;
+        for (String className : classNames) {
+            Method[] methods = Class.forName(className).getDeclaredMethods();
+            Arrays.sort(methods, (a, b) -> a.getName().compareTo(b.getName()));
+            for (Method method : methods) {
+                if (!method.getName().startsWith("test") || !Modifier.isStatic(method.getModifiers())
+                        || method.getParameterCount() != 0) {
+                    continue;
+                }
+                String name = className + "." + method.getName();
+                try {
+                    method.setAccessible(true);
+                    method.invoke(null);
+                    System.out.println("passed " + name);
+                    ++passed;
+                } catch (InvocationTargetException e) {
+                    System.out.println("FAILED " + name + ": " + e.getCause());
+                    e.getCause().printStackTrace(System.out);
+                    ++failed;
+                }
+            }
+        }
+        System.out.println(passed + " passed, " + failed + " failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void checkEquals(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    public static void checkEquals(long expected, long actual, String message) {
+        if (expected != actual) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    public static void checkArrayEquals(long[] expected, long[] actual, String message) {
+        if (!Arrays.equals(expected, actual)) {
+            throw new AssertionError(message + ": expected " + expected.length + " values "
+                    + abbreviate(expected) + " but was " + actual.length + " values " + abbreviate(actual));
+        }
+    }
+
+    public static void checkThrows(Class<? extends Throwable> type, ThrowingRunnable runnable, String message) {
+        try {
+            runnable.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) {
+                return;
+            }
+            throw new AssertionError(message + ": expected " + type.getSimpleName() + " but got " + e, e);
+        }
+        throw new AssertionError(message + ": expected " + type.getSimpleName() + " but nothing was thrown");
+    }
+
+    private static String abbreviate(long[] values) {
+        return values.length <= 8 ? Arrays.toString(values) : Arrays.toString(Arrays.copyOf(values, 8)) + "...";
+    }
+
+    /**
+     * @return the odd primes up to bound, by plain trial division, to check the engines against
+     */
+    public static long[] oddPrimesUpTo(long bound) {
+        long[] primes = new long[16];
+        int size = 0;
+        for (long candidate = 3; candidate <= bound; candidate += 2) {
+            if (isPrime(candidate)) {
+                if (size == primes.length) {
+                    primes = Arrays.copyOf(primes, size * 2);
+                }
+                primes[size++] = candidate;
+            }
+        }
+        return Arrays.copyOf(primes, size);
+    }
+
+    /**
+     * @return the odd primes from up to to, by plain trial division
+     */
+    public static long[] oddPrimesBetween(long from, long to) {
+        long[] primes = new long[16];
+        int size = 0;
+        for (long candidate = Math.max(3, from | 1); candidate <= to; candidate += 2) {
+            if (isPrime(candidate)) {
+                if (size == primes.length) {
+                    primes = Arrays.copyOf(primes, size * 2);
+                }
+                primes[size++] = candidate;
+            }
+        }
+        return Arrays.copyOf(primes, size);
+    }
+
+    public static boolean isPrime(long n) {
+        if (n < 2) {
+            return false;
+        }
+        if (n % 2 == 0) {
+            return n == 2;
+        }
+        for (long divisor = 3; divisor <= n / divisor; divisor += 2) {
+            if (n % divisor == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static PrimeList primeList(long[] primes) {
+        PrimeList list = new PrimeList();
+        list.addAll(primes, primes.length);
+        return list;
+    }
+
+    /**
+     * @return the values of the iterator as an array
+     */
+    public static long[] toArray(java.util.PrimitiveIterator.OfLong iterator) {
+        long[] values = new long[16];
+        int size = 0;
+        while (iterator.hasNext()) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = iterator.nextLong();
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @return a new empty directory, removed again by {@link #delete}
+     */
+    public static File temporaryDirectory() throws IOException {
+        return Files.createTempDirectory("prime-test").toFile();
+    }
+
+    public static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    public interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}